@@ -0,0 +1,63 @@
+package mc506lw.cjm;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.java.JavaPluginLoader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Creates plugin instances for the benchmarks
+ * 为基准测试创建插件实例
+ * 每个实例使用独立的临时数据文件夹，只加载配置，不连接数据库
+ */
+public final class BenchmarkPlugin {
+
+    private BenchmarkPlugin() {
+    }
+
+    /**
+     * Create a plugin with the default config.yml edited by configure
+     * 使用修改后的默认config.yml创建插件
+     * @param configure edits the default config before it is loaded | 在加载前修改默认配置
+     */
+    @SuppressWarnings("deprecation")
+    public static CustomJoinMessage create(Consumer<YamlConfiguration> configure) throws IOException {
+        Path dataFolder = Files.createTempDirectory("cjm-benchmark");
+
+        YamlConfiguration config;
+        try (InputStream stream = CustomJoinMessage.class.getResourceAsStream("/config.yml");
+             Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8)) {
+            config = YamlConfiguration.loadConfiguration(reader);
+        }
+        configure.accept(config);
+        config.save(dataFolder.resolve("config.yml").toFile());
+
+        JavaPluginLoader loader = new JavaPluginLoader(BukkitStubs.server());
+        PluginDescriptionFile description = new PluginDescriptionFile("CustomJoinMessage", "benchmark",
+                CustomJoinMessage.class.getName());
+        return new CustomJoinMessage(loader, description, dataFolder.toFile(),
+                dataFolder.resolve("CustomJoinMessage.jar").toFile());
+    }
+
+    /**
+     * Delete the plugin's temporary data folder
+     * 删除插件的临时数据文件夹
+     */
+    public static void delete(CustomJoinMessage plugin) throws IOException {
+        try (Stream<Path> files = Files.walk(plugin.getDataFolder().toPath())) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+}
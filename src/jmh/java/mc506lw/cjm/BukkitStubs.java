@@ -0,0 +1,111 @@
+package mc506lw.cjm;
+
+import org.bukkit.Server;
+import org.bukkit.entity.Player;
+import org.bukkit.permissions.Permission;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * Stubbed Bukkit interfaces so the benchmarks run without a server
+ * 用动态代理实现的Bukkit接口，基准测试不需要运行服务器
+ * 只实现基准测试用到的方法，其余方法返回默认值（null、false或0）
+ */
+public final class BukkitStubs {
+    private static final Logger LOGGER = Logger.getLogger("CustomJoinMessage-Benchmark");
+
+    private BukkitStubs() {
+    }
+
+    /**
+     * Create a server that only provides a logger
+     * 创建只提供日志的服务器
+     */
+    public static Server server() {
+        return (Server) Proxy.newProxyInstance(Server.class.getClassLoader(), new Class<?>[]{Server.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getLogger":
+                            return LOGGER;
+                        case "getName":
+                            return "Benchmark";
+                        default:
+                            return handleObjectMethod(proxy, method, args);
+                    }
+                });
+    }
+
+    /**
+     * Create a player with a fixed set of permission nodes
+     * 创建拥有固定权限节点的玩家
+     * @param name player name | 玩家名
+     * @param online value returned by isOnline(), offline players are not cached by PermissionUtils | isOnline()的返回值，PermissionUtils不缓存离线玩家
+     * @param permissions granted permission nodes | 拥有的权限节点
+     */
+    public static Player player(String name, boolean online, Set<String> permissions) {
+        UUID uuid = UUID.nameUUIDFromBytes(("OfflinePlayer:" + name).getBytes());
+        return (Player) Proxy.newProxyInstance(Player.class.getClassLoader(), new Class<?>[]{Player.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getName":
+                        case "getDisplayName":
+                            return name;
+                        case "getUniqueId":
+                            return uuid;
+                        case "isOnline":
+                            return online;
+                        case "hasPermission":
+                        case "isPermissionSet":
+                            return permissions.contains(args[0] instanceof Permission
+                                    ? ((Permission) args[0]).getName() : (String) args[0]);
+                        default:
+                            return handleObjectMethod(proxy, method, args);
+                    }
+                });
+    }
+
+    private static Object handleObjectMethod(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "Stub" + proxy.getClass().getInterfaces()[0].getSimpleName();
+            default:
+                return defaultValue(method.getReturnType());
+        }
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        }
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == char.class) {
+            return '\0';
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == float.class) {
+            return 0f;
+        }
+        if (type == double.class) {
+            return 0d;
+        }
+        if (type == byte.class) {
+            return (byte) 0;
+        }
+        if (type == short.class) {
+            return (short) 0;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,356 @@
+package mc506lw.cjm.benchmark;
+
+import mc506lw.cjm.BenchmarkPlugin;
+import mc506lw.cjm.CustomJoinMessage;
+import mc506lw.cjm.database.DatabaseExecutor;
+import mc506lw.cjm.database.DatabaseManager;
+import mc506lw.cjm.database.WriteBehindBuffer;
+import mc506lw.cjm.utils.LatencyHistogram;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput and latency of DatabaseManager against a temporary SQLite database
+ * 在临时SQLite数据库上测量DatabaseManager的吞吐量和延迟
+ * 对每种玩家数量创建一个新数据库并预先写入玩家记录，然后按每种并发客户端数运行混合读写负载。
+ * 每个客户端循环执行操作，按权重随机选择：查询玩家记录（加入时的查询）、设置加入消息、删除加入消息和列出所有玩家。
+ * 设置和删除只进入写后缓冲区，它们的延迟只是进入缓冲区的时间；实际的数据库写入延迟按每次写入缓冲区单独统计为flush一行。
+ * 每轮结束时把缓冲区写入数据库，并把这段时间计入总耗时，吞吐量包含实际写入。
+ * 操作失败时计入该操作的错误数，客户端继续运行。
+ * 随机数种子固定，相同参数下每个客户端执行的操作序列相同。
+ *
+ * 参数（key=value）：
+ * players=1000,100000,1000000  预先写入的玩家数
+ * clients=1,4,16,64            并发客户端数
+ * duration=10                  每轮测量的秒数
+ * warmup=3                     每轮测量前预热的秒数
+ * mix=800,150,49,1             查询、设置、删除、列出所有玩家的权重
+ * seed=42                      随机数种子
+ * csv=results.csv              同时把结果写入CSV文件
+ * config.<path>=<value>        修改config.yml中的配置，例如config.database.executor.threads=4
+ */
+public final class DatabaseThroughputHarness {
+    private static final String JOIN_MESSAGE = "&6[&eVIP&6] &e%player_name% 加入了服务器";
+    private static final int SEED_BATCH_SIZE = 10000;
+
+    /**
+     * Operations of the mixed workload
+     * 混合负载中的操作
+     */
+    private enum Operation {
+        LOOKUP("lookup"),
+        SET("set"),
+        REMOVE("remove"),
+        LIST_PLAYERS("listplayers");
+
+        private final String displayName;
+
+        Operation(String displayName) {
+            this.displayName = displayName;
+        }
+    }
+
+    private final int[] playerCounts;
+    private final int[] clientCounts;
+    private final long durationNanos;
+    private final long warmupNanos;
+    private final int[] weights;
+    private final long seed;
+    private final Map<String, Object> configOverrides;
+    private final List<String> csvRows = new ArrayList<>();
+
+    private DatabaseThroughputHarness(Map<String, String> options, Map<String, Object> configOverrides) {
+        this.playerCounts = parseInts(options.getOrDefault("players", "1000,100000,1000000"));
+        this.clientCounts = parseInts(options.getOrDefault("clients", "1,4,16,64"));
+        this.durationNanos = Long.parseLong(options.getOrDefault("duration", "10")) * 1_000_000_000L;
+        this.warmupNanos = Long.parseLong(options.getOrDefault("warmup", "3")) * 1_000_000_000L;
+        this.weights = parseInts(options.getOrDefault("mix", "800,150,49,1"));
+        this.seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        this.configOverrides = configOverrides;
+
+        if (weights.length != Operation.values().length) {
+            throw new IllegalArgumentException("mix needs " + Operation.values().length + " weights: lookup,set,remove,listplayers");
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        Map<String, Object> configOverrides = new LinkedHashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Expected key=value but got: " + arg);
+            }
+            String key = arg.substring(0, separator);
+            String value = arg.substring(separator + 1);
+            if (key.startsWith("config.")) {
+                configOverrides.put(key.substring("config.".length()), parseConfigValue(value));
+            } else {
+                options.put(key, value);
+            }
+        }
+
+        DatabaseThroughputHarness harness = new DatabaseThroughputHarness(options, configOverrides);
+        harness.run();
+
+        String csv = options.get("csv");
+        if (csv != null) {
+            harness.writeCsv(csv);
+        }
+    }
+
+    private void run() throws IOException, SQLException, InterruptedException {
+        System.out.println(String.format(Locale.ROOT, "%-9s %-8s %-12s %10s %10s %9s %9s %9s %9s %8s",
+                "players", "clients", "operation", "ops", "ops/s", "p50(ms)", "p95(ms)", "p99(ms)", "max(ms)", "errors"));
+        csvRows.add("players,clients,operation,ops,ops_per_sec,p50_ms,p95_ms,p99_ms,max_ms,errors,rejected");
+
+        for (int players : playerCounts) {
+            CustomJoinMessage plugin = BenchmarkPlugin.create(this::configure);
+            DatabaseManager databaseManager = new DatabaseManager(plugin);
+            try {
+                databaseManager.initialize();
+                seed(databaseManager, players);
+
+                for (int clients : clientCounts) {
+                    runRound(databaseManager, players, clients, warmupNanos);
+                    report(players, clients, runRound(databaseManager, players, clients, durationNanos));
+                }
+            } finally {
+                databaseManager.close();
+                BenchmarkPlugin.delete(plugin);
+            }
+        }
+    }
+
+    private void configure(YamlConfiguration config) {
+        config.set("database.type", "sqlite");
+        configOverrides.forEach(config::set);
+    }
+
+    /**
+     * 在一个事务中分批写入玩家记录，不经过写后缓冲区
+     */
+    private void seed(DatabaseManager databaseManager, int players) throws SQLException {
+        long started = System.nanoTime();
+        try (Connection connection = databaseManager.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "INSERT INTO joinmessages (uuid, username, message) VALUES (?, ?, ?)")) {
+            connection.setAutoCommit(false);
+            for (int i = 0; i < players; i++) {
+                statement.setString(1, uuidOf(i));
+                statement.setString(2, nameOf(i));
+                statement.setString(3, JOIN_MESSAGE);
+                statement.addBatch();
+                if ((i + 1) % SEED_BATCH_SIZE == 0) {
+                    statement.executeBatch();
+                }
+            }
+            statement.executeBatch();
+            connection.commit();
+        }
+        System.out.println(String.format(Locale.ROOT, "Seeded %d players in %.1fs",
+                players, (System.nanoTime() - started) / 1e9));
+    }
+
+    /**
+     * 运行一轮负载，结束后把写后缓冲区写入数据库
+     */
+    private Round runRound(DatabaseManager databaseManager, int players, int clients, long nanos)
+            throws SQLException, InterruptedException {
+        Round round = new Round();
+        DatabaseExecutor executor = databaseManager.getDatabaseExecutor();
+        WriteBehindBuffer writeBuffer = databaseManager.getWriteBuffer();
+        long rejectedBefore = executor.getRejectedTasks();
+        // 上一轮剩余的修改已在上一轮结束时写入，这里清空后只统计本轮的写入
+        writeBuffer.getFlushLatency().reset();
+        long started = System.nanoTime();
+        long deadline = started + nanos;
+
+        List<Thread> threads = new ArrayList<>(clients);
+        for (int client = 0; client < clients; client++) {
+            Random random = new Random(seed * 31 + client);
+            Thread thread = new Thread(() -> runClient(databaseManager, players, random, deadline, round),
+                    "CustomJoinMessage-Benchmark-Client-" + client);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        writeBuffer.flush();
+        round.elapsedNanos = System.nanoTime() - started;
+        round.flushes = writeBuffer.getFlushLatency().snapshot();
+        round.rejected = executor.getRejectedTasks() - rejectedBefore;
+        return round;
+    }
+
+    private void runClient(DatabaseManager databaseManager, int players, Random random, long deadline, Round round) {
+        int totalWeight = 0;
+        for (int weight : weights) {
+            totalWeight += weight;
+        }
+
+        while (System.nanoTime() < deadline) {
+            Operation operation = pick(random.nextInt(totalWeight));
+            int player = random.nextInt(players);
+            String uuid = uuidOf(player);
+
+            long started = System.nanoTime();
+            try {
+                execute(databaseManager, operation, player, uuid);
+            } catch (RuntimeException e) {
+                // 被拒绝或SQLite忙等失败只计入错误数，不能终止客户端，否则这一轮实际运行的客户端会少于报告的数量
+                round.errors.get(operation).increment();
+                continue;
+            }
+            round.latencies.get(operation).record(System.nanoTime() - started);
+        }
+    }
+
+    private void execute(DatabaseManager databaseManager, Operation operation, int player, String uuid) {
+        switch (operation) {
+            case LOOKUP:
+                databaseManager.getPlayerRecord(uuid).join();
+                break;
+            case SET:
+                databaseManager.setJoinMessage(uuid, nameOf(player), JOIN_MESSAGE);
+                break;
+            case REMOVE:
+                databaseManager.removeJoinMessage(uuid);
+                break;
+            case LIST_PLAYERS:
+                databaseManager.getAllPlayers().join();
+                break;
+            default:
+                throw new IllegalStateException("Unknown operation: " + operation);
+        }
+    }
+
+    private Operation pick(int value) {
+        Operation[] operations = Operation.values();
+        for (int i = 0; i < operations.length; i++) {
+            value -= weights[i];
+            if (value < 0) {
+                return operations[i];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+
+    private void report(int players, int clients, Round round) {
+        long total = 0;
+        long errors = 0;
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram.Snapshot snapshot = round.latencies.get(operation).snapshot();
+            long operationErrors = round.errors.get(operation).sum();
+            total += snapshot.getCount();
+            errors += operationErrors;
+            if (snapshot.getCount() > 0 || operationErrors > 0) {
+                printRow(players, clients, operation.displayName, snapshot, operationErrors, round);
+            }
+        }
+        // 写后缓冲区的每次写入，包括每轮结束时的最后一次，不计入操作总数
+        if (round.flushes.getCount() > 0) {
+            printRow(players, clients, "flush", round.flushes, 0, round);
+        }
+
+        double opsPerSecond = total / (round.elapsedNanos / 1e9);
+        System.out.println(String.format(Locale.ROOT, "%-9d %-8d %-12s %10d %10.1f   (%d errors, %d rejected, %.1fs including final flush)",
+                players, clients, "total", total, opsPerSecond, errors, round.rejected, round.elapsedNanos / 1e9));
+        csvRows.add(String.format(Locale.ROOT, "%d,%d,total,%d,%.1f,,,,,%d,%d",
+                players, clients, total, opsPerSecond, errors, round.rejected));
+    }
+
+    private void printRow(int players, int clients, String operation, LatencyHistogram.Snapshot snapshot,
+                          long errors, Round round) {
+        double opsPerSecond = snapshot.getCount() / (round.elapsedNanos / 1e9);
+        System.out.println(String.format(Locale.ROOT, "%-9d %-8d %-12s %10d %10.1f %9.3f %9.3f %9.3f %9.3f %8d",
+                players, clients, operation, snapshot.getCount(), opsPerSecond,
+                snapshot.getPercentileMicros(50) / 1000.0, snapshot.getPercentileMicros(95) / 1000.0,
+                snapshot.getPercentileMicros(99) / 1000.0, snapshot.getMaxMicros() / 1000.0, errors));
+        csvRows.add(String.format(Locale.ROOT, "%d,%d,%s,%d,%.1f,%.3f,%.3f,%.3f,%.3f,%d,",
+                players, clients, operation, snapshot.getCount(), opsPerSecond,
+                snapshot.getPercentileMicros(50) / 1000.0, snapshot.getPercentileMicros(95) / 1000.0,
+                snapshot.getPercentileMicros(99) / 1000.0, snapshot.getMaxMicros() / 1000.0, errors));
+    }
+
+    private void writeCsv(String file) throws IOException {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8))) {
+            csvRows.forEach(writer::println);
+        }
+        System.out.println("Results written to " + file);
+    }
+
+    private static String uuidOf(int player) {
+        return UUID.nameUUIDFromBytes(("OfflinePlayer:Player" + player).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    private static String nameOf(int player) {
+        return "Player" + player;
+    }
+
+    private static int[] parseInts(String value) {
+        String[] parts = value.split(",");
+        int[] result = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            result[i] = Integer.parseInt(parts[i].trim());
+        }
+        return result;
+    }
+
+    /**
+     * 配置值按布尔值、整数、小数、字符串的顺序解析
+     */
+    private static Object parseConfigValue(String value) {
+        if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false")) {
+            return Boolean.parseBoolean(value);
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ignored) {
+            // 不是整数
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException ignored) {
+            // 不是小数
+        }
+        return value;
+    }
+
+    /**
+     * 一轮负载的结果
+     */
+    private static final class Round {
+        private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+        private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+        private LatencyHistogram.Snapshot flushes;
+        private long elapsedNanos;
+        private long rejected;
+
+        private Round() {
+            for (Operation operation : Operation.values()) {
+                latencies.put(operation, new LatencyHistogram());
+                errors.put(operation, new LongAdder());
+            }
+        }
+    }
+}
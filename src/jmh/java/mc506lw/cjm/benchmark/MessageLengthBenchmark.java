@@ -0,0 +1,56 @@
+package mc506lw.cjm.benchmark;
+
+import mc506lw.cjm.utils.MessageLengthUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Length checks that ignore color codes, run on every /setjoin and /setquit
+ * 忽略颜色代码的长度检查，每次执行/setjoin和/setquit时调用
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MessageLengthBenchmark {
+    // 与config.yml中前缀和后缀的默认长度限制相同，样例消息都超过该长度
+    private static final int LIMIT = 20;
+
+    @Param({SampleMessages.PLAIN, SampleMessages.LEGACY, SampleMessages.HEX})
+    public String style;
+
+    private final MessageLengthUtil messageLengthUtil = new MessageLengthUtil();
+    private String message;
+
+    @Setup
+    public void setUp() {
+        message = SampleMessages.text(style);
+    }
+
+    @Benchmark
+    public int getLengthWithoutColorCodes() {
+        return messageLengthUtil.getLengthWithoutColorCodes(message);
+    }
+
+    @Benchmark
+    public boolean exceedsLengthLimit() {
+        return messageLengthUtil.exceedsLengthLimit(message, LIMIT);
+    }
+
+    @Benchmark
+    public boolean containsColorCodes() {
+        return messageLengthUtil.containsColorCodes(message);
+    }
+
+    @Benchmark
+    public String truncateToLength() {
+        return messageLengthUtil.truncateToLength(message, LIMIT);
+    }
+}
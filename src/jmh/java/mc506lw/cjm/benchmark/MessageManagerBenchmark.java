@@ -0,0 +1,56 @@
+package mc506lw.cjm.benchmark;
+
+import mc506lw.cjm.BenchmarkPlugin;
+import mc506lw.cjm.CustomJoinMessage;
+import mc506lw.cjm.utils.MessageManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Color code translation and player name formatting
+ * 颜色代码转换和玩家名格式化
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MessageManagerBenchmark {
+
+    @Param({SampleMessages.PLAIN, SampleMessages.LEGACY, SampleMessages.HEX})
+    public String style;
+
+    private CustomJoinMessage plugin;
+    private MessageManager messageManager;
+    private String message;
+
+    @Setup
+    public void setUp() throws IOException {
+        plugin = BenchmarkPlugin.create(config -> { });
+        messageManager = new MessageManager(plugin);
+        message = SampleMessages.text(style);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkPlugin.delete(plugin);
+    }
+
+    @Benchmark
+    public String processColors() {
+        return messageManager.processColors(message);
+    }
+
+    @Benchmark
+    public String formatMessage() {
+        return messageManager.formatMessage(message, "Steve");
+    }
+}
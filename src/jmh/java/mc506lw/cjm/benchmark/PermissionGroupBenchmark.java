@@ -0,0 +1,115 @@
+package mc506lw.cjm.benchmark;
+
+import mc506lw.cjm.BenchmarkPlugin;
+import mc506lw.cjm.BukkitStubs;
+import mc506lw.cjm.CustomJoinMessage;
+import mc506lw.cjm.utils.PermissionGroupIndex;
+import mc506lw.cjm.utils.PermissionGroupIndex.PermissionGroup;
+import mc506lw.cjm.utils.PermissionUtils;
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Permission group resolution against a synthetic config with 50 groups
+ * 在有50个权限组的配置下解析玩家的权限组
+ * 玩家的权限检查通过动态代理实现，每次检查的代理开销对所有测试相同
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PermissionGroupBenchmark {
+    private static final int GROUPS = 50;
+
+    /**
+     * highest: the player is in the first group checked | 玩家属于最先检查的组
+     * lowest: the player is in the last group checked | 玩家属于最后检查的组
+     * none: the player is in no group, every node is checked | 玩家不属于任何组，检查所有权限节点
+     */
+    @Param({"highest", "lowest", "none"})
+    public String membership;
+
+    private CustomJoinMessage plugin;
+    private PermissionUtils permissionUtils;
+    private PermissionGroupIndex index;
+    private Player onlinePlayer;
+    private Player offlinePlayer;
+
+    @Setup
+    public void setUp() throws IOException {
+        plugin = BenchmarkPlugin.create(config -> {
+            // 替换默认配置中的示例组和预设权限组
+            config.createSection("permission-groups");
+            config.createSection("predefined-permissions");
+            for (int i = 1; i <= GROUPS; i++) {
+                String path = "permission-groups.group" + i;
+                config.set(path + ".priority", i);
+                config.set(path + ".join-message", "&6[&eGroup " + i + "&6] &e%player_name% 加入了服务器");
+                config.set(path + ".quit-message", "&6[&eGroup " + i + "&6] &e%player_name% 离开了服务器");
+            }
+        });
+        permissionUtils = new PermissionUtils(plugin);
+        index = plugin.getConfigManager().getSnapshot().getPermissionGroups();
+
+        Set<String> permissions;
+        switch (membership) {
+            case "highest":
+                permissions = Collections.singleton("customjoinmessage.group" + GROUPS);
+                break;
+            case "lowest":
+                permissions = Collections.singleton("customjoinmessage.group1");
+                break;
+            default:
+                permissions = Collections.emptySet();
+                break;
+        }
+        onlinePlayer = BukkitStubs.player("Steve", true, permissions);
+        // PermissionUtils只缓存在线玩家，离线玩家每次都重新解析
+        offlinePlayer = BukkitStubs.player("Alex", false, permissions);
+        permissionUtils.cachePermissionGroups(onlinePlayer);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkPlugin.delete(plugin);
+    }
+
+    /**
+     * Scan of the compiled groups only
+     * 只扫描预编译的权限组
+     */
+    @Benchmark
+    public PermissionGroup resolve() {
+        return index.resolve(onlinePlayer, false);
+    }
+
+    /**
+     * Lookup of a player resolved at login, as done when the join message is built
+     * 查找登录时已解析的权限组，与生成加入消息时相同
+     */
+    @Benchmark
+    public PermissionGroup getJoinPermissionGroupCached() {
+        return permissionUtils.getJoinPermissionGroup(onlinePlayer);
+    }
+
+    /**
+     * Full resolution of the join group on every call
+     * 每次调用都重新解析加入权限组
+     */
+    @Benchmark
+    public PermissionGroup getJoinPermissionGroupUncached() {
+        return permissionUtils.getJoinPermissionGroup(offlinePlayer);
+    }
+}
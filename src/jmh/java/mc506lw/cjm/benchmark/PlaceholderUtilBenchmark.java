@@ -0,0 +1,61 @@
+package mc506lw.cjm.benchmark;
+
+import mc506lw.cjm.BenchmarkPlugin;
+import mc506lw.cjm.BukkitStubs;
+import mc506lw.cjm.CustomJoinMessage;
+import mc506lw.cjm.utils.PlaceholderUtil;
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Placeholder replacement with PlaceholderAPI disabled in config.yml
+ * 在config.yml中禁用PlaceholderAPI时的占位符替换
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PlaceholderUtilBenchmark {
+
+    @Param({SampleMessages.PLAIN, SampleMessages.LEGACY, SampleMessages.HEX})
+    public String style;
+
+    private CustomJoinMessage plugin;
+    private PlaceholderUtil placeholderUtil;
+    private Player player;
+    private String message;
+
+    @Setup
+    public void setUp() throws IOException {
+        plugin = BenchmarkPlugin.create(config -> config.set("placeholders.enabled", false));
+        placeholderUtil = new PlaceholderUtil(plugin);
+        player = BukkitStubs.player("Steve", true, Collections.emptySet());
+        message = SampleMessages.text(style);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkPlugin.delete(plugin);
+    }
+
+    @Benchmark
+    public String replacePlaceholders() {
+        return placeholderUtil.replacePlaceholders(player, message);
+    }
+
+    @Benchmark
+    public String replacePlaceholdersOffline() {
+        return placeholderUtil.replacePlaceholders("Steve", message);
+    }
+}
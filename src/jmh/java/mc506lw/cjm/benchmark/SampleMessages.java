@@ -0,0 +1,28 @@
+package mc506lw.cjm.benchmark;
+
+/**
+ * Message texts shared by the benchmarks, selected with the style parameter
+ * 基准测试共用的消息文本，通过style参数选择
+ */
+final class SampleMessages {
+    // 参数可选的值，与text中的分支对应
+    static final String PLAIN = "plain";
+    static final String LEGACY = "legacy";
+    static final String HEX = "hex";
+
+    private SampleMessages() {
+    }
+
+    static String text(String style) {
+        switch (style) {
+            case PLAIN:
+                return "%player_name% joined the server, welcome back!";
+            case LEGACY:
+                return "&6[&eVIP&6] &e%player_name% &a加入了&l服务器&r&7，欢迎回来！";
+            case HEX:
+                return "&#b2dfd5[&#9fd4d0C&#8bcacaJ&#78bfc5M&#64b4bf] &#89b4fa%player_name% &#f9e2af加入了服务器&#fff，欢迎回来！";
+            default:
+                throw new IllegalArgumentException("Unknown message style: " + style);
+        }
+    }
+}
@@ -6,16 +6,25 @@ import mc506lw.cjm.commands.SetQuitCommand;
 import mc506lw.cjm.database.DatabaseManager;
 import mc506lw.cjm.database.DatabaseVersionManager;
 import mc506lw.cjm.expansions.CustomJoinMessageExpansion;
+import mc506lw.cjm.expansions.PlaceholderCache;
 import mc506lw.cjm.listeners.PlayerJoinListener;
+import mc506lw.cjm.listeners.PlayerPreLoginListener;
 import mc506lw.cjm.listeners.PlayerQuitListener;
+import mc506lw.cjm.utils.BroadcastQueue;
 import mc506lw.cjm.utils.ConfigManager;
+import mc506lw.cjm.utils.JoinStormCoalescer;
+import mc506lw.cjm.utils.LatencyStats;
 import mc506lw.cjm.utils.MessageManager;
 import mc506lw.cjm.utils.MessageLengthUtil;
 import mc506lw.cjm.utils.PermissionUtils;
 import mc506lw.cjm.utils.PlaceholderUtil;
 import mc506lw.cjm.utils.SchedulerUtils;
 import org.bukkit.Bukkit;
+import org.bukkit.plugin.PluginDescriptionFile;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.plugin.java.JavaPluginLoader;
+
+import java.io.File;
 
 public final class CustomJoinMessage extends JavaPlugin {
 
@@ -27,18 +36,41 @@ public final class CustomJoinMessage extends JavaPlugin {
     private SchedulerUtils schedulerUtils;
     private PlaceholderUtil placeholderUtil;
     private MessageLengthUtil messageLengthUtil;
+    private PlaceholderCache placeholderCache;
+    private BroadcastQueue broadcastQueue;
+    private JoinStormCoalescer joinStormCoalescer;
+    private LatencyStats latencyStats;
+
+    public CustomJoinMessage() {
+        super();
+    }
+
+    /**
+     * Create the plugin outside of a server, used by the benchmarks
+     * 在服务器之外创建插件，供基准测试使用；只加载配置，不连接数据库也不注册命令和监听器
+     */
+    CustomJoinMessage(JavaPluginLoader loader, PluginDescriptionFile description, File dataFolder, File file) {
+        super(loader, description, dataFolder, file);
+        latencyStats = new LatencyStats();
+        configManager = new ConfigManager(this);
+    }
 
     @Override
     public void onEnable() {
         instance = this;
 
         // Initialize managers
+        latencyStats = new LatencyStats();
         configManager = new ConfigManager(this);
         messageManager = new MessageManager(this);
         permissionUtils = new PermissionUtils(this);
         schedulerUtils = new SchedulerUtils(this);
         placeholderUtil = new PlaceholderUtil(this);
         messageLengthUtil = new MessageLengthUtil();
+        placeholderCache = new PlaceholderCache(configManager.getPlaceholderCacheMaxSize(),
+                configManager.getPlaceholderCacheTtl() * 1000L);
+        broadcastQueue = new BroadcastQueue(this);
+        joinStormCoalescer = new JoinStormCoalescer(this);
         databaseManager = new DatabaseManager(this);
 
         // Initialize database
@@ -53,7 +85,12 @@ public final class CustomJoinMessage extends JavaPlugin {
         getCommand("setquit").setExecutor(new SetQuitCommand(this));
         getCommand("cjm").setExecutor(new CjmCommand(this));
 
+        // Start sending queued broadcasts and join storm digests
+        broadcastQueue.start();
+        joinStormCoalescer.start();
+
         // Register events
+        getServer().getPluginManager().registerEvents(new PlayerPreLoginListener(this), this);
         getServer().getPluginManager().registerEvents(new PlayerJoinListener(this), this);
         getServer().getPluginManager().registerEvents(new PlayerQuitListener(this), this);
 
@@ -105,4 +142,20 @@ public final class CustomJoinMessage extends JavaPlugin {
     public MessageLengthUtil getMessageLengthUtil() {
         return messageLengthUtil;
     }
+    
+    public PlaceholderCache getPlaceholderCache() {
+        return placeholderCache;
+    }
+    
+    public BroadcastQueue getBroadcastQueue() {
+        return broadcastQueue;
+    }
+    
+    public JoinStormCoalescer getJoinStormCoalescer() {
+        return joinStormCoalescer;
+    }
+    
+    public LatencyStats getLatencyStats() {
+        return latencyStats;
+    }
 }
\ No newline at end of file
@@ -1,7 +1,15 @@
 package mc506lw.cjm.commands;
 
 import mc506lw.cjm.CustomJoinMessage;
+import mc506lw.cjm.database.DatabaseExecutor;
 import mc506lw.cjm.database.DatabaseVersionManager;
+import mc506lw.cjm.database.QueryStats;
+import mc506lw.cjm.database.WriteBehindBuffer;
+import mc506lw.cjm.expansions.PlaceholderCache;
+import mc506lw.cjm.utils.BroadcastQueue;
+import mc506lw.cjm.utils.JoinStormCoalescer;
+import mc506lw.cjm.utils.LatencyHistogram;
+import mc506lw.cjm.utils.LatencyStats;
 import mc506lw.cjm.utils.MessageManager;
 import mc506lw.cjm.utils.PermissionUtils;
 import mc506lw.cjm.utils.SchedulerUtils;
@@ -16,6 +24,7 @@ import org.bukkit.entity.Player;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 public class CjmCommand implements CommandExecutor, TabCompleter {
     private final CustomJoinMessage plugin;
@@ -48,6 +57,9 @@ public class CjmCommand implements CommandExecutor, TabCompleter {
             // Reload configuration and check if it was updated
             boolean configUpdated = plugin.getConfigManager().reloadConfig();
             
+            // Permission groups may have changed, resolve them again on next use
+            permissionUtils.invalidatePermissionGroups();
+            
             // Check if config was updated
             boolean configFileUpdated = plugin.getConfigManager().getLastBackupFile() != null;
             boolean messagesFileUpdated = plugin.getConfigManager().getLastMessagesBackupFile() != null;
@@ -122,8 +134,11 @@ public class CjmCommand implements CommandExecutor, TabCompleter {
                     
                     // 如果获取UUID失败且是强制模式，尝试直接通过用户名删除
                     if (playerUuid != null) {
+                        final String uuid = playerUuid;
                         // 使用CompletableFuture处理异步结果
                         dbVersionManager.resetPlayerData(playerName).thenAccept(success -> {
+                            // 删除完成后再清除占位符缓存，避免删除前开始的刷新重新缓存旧消息
+                            plugin.getPlaceholderCache().invalidate(uuid);
                             plugin.getSchedulerUtils().runTask(() -> {
                                 if (success) {
                                     messageManager.sendMessage(sender, "player-data-reset", "%player%", playerName);
@@ -144,6 +159,10 @@ public class CjmCommand implements CommandExecutor, TabCompleter {
                     } else if (force) {
                         // 强制模式：尝试直接删除用户名记录
                         boolean success = dbVersionManager.forceResetPlayerDataByName(playerName);
+                        if (success) {
+                            // 不知道被删除记录的UUID，清除所有玩家的占位符缓存
+                            plugin.getPlaceholderCache().clear();
+                        }
                         plugin.getSchedulerUtils().runTask(() -> {
                             if (success) {
                                 messageManager.sendMessage(sender, "player-data-reset", "%player%", playerName);
@@ -229,6 +248,8 @@ public class CjmCommand implements CommandExecutor, TabCompleter {
             String uuid = args[1];
             
             plugin.getDatabaseManager().deletePlayerByUuid(uuid).thenAccept(success -> {
+                // 删除完成后再清除占位符缓存，避免删除前开始的刷新重新缓存旧消息
+                plugin.getPlaceholderCache().invalidate(uuid);
                 plugin.getSchedulerUtils().runTask(() -> {
                     if (success) {
                         messageManager.sendMessage(sender, "deleteplayer-success", "%uuid%", uuid);
@@ -246,6 +267,19 @@ public class CjmCommand implements CommandExecutor, TabCompleter {
             return true;
         }
 
+        if (args[0].equalsIgnoreCase("stats")) {
+            // Show or reset the pipeline latency statistics
+            if (args.length >= 2 && args[1].equalsIgnoreCase("reset")) {
+                plugin.getLatencyStats().reset();
+                plugin.getDatabaseManager().getQueryStats().reset();
+                messageManager.sendMessage(sender, "stats-reset");
+                return true;
+            }
+            
+            sendStats(sender);
+            return true;
+        }
+
         // Unknown command
         messageManager.sendMessage(sender, "unknown-command");
         return true;
@@ -262,6 +296,7 @@ public class CjmCommand implements CommandExecutor, TabCompleter {
         messageManager.sendMessage(sender, "admin-help-resetplayer");
         messageManager.sendMessage(sender, "admin-help-listplayers");
         messageManager.sendMessage(sender, "admin-help-deleteplayer");
+        messageManager.sendMessage(sender, "admin-help-stats");
         messageManager.sendMessage(sender, "admin-help-help");
         
         // Send config note
@@ -274,6 +309,77 @@ public class CjmCommand implements CommandExecutor, TabCompleter {
         messageManager.sendMessage(sender, "admin-help-quit-note");
     }
 
+    private void sendStats(CommandSender sender) {
+        messageManager.sendMessage(sender, "stats-header");
+        
+        // Latency of each pipeline stage, stages without samples are skipped
+        boolean anySamples = false;
+        for (LatencyStats.Stage stage : LatencyStats.Stage.values()) {
+            LatencyHistogram.Snapshot snapshot = plugin.getLatencyStats().snapshot(stage);
+            if (snapshot.getCount() == 0) {
+                continue;
+            }
+            anySamples = true;
+            
+            sender.sendMessage(messageManager.getMessage("stats-stage", "%stage%", stage.getDisplayName())
+                    .replace("%count%", String.valueOf(snapshot.getCount()))
+                    .replace("%p50%", formatMillis(snapshot.getPercentileMicros(50)))
+                    .replace("%p95%", formatMillis(snapshot.getPercentileMicros(95)))
+                    .replace("%p99%", formatMillis(snapshot.getPercentileMicros(99)))
+                    .replace("%max%", formatMillis(snapshot.getMaxMicros())));
+        }
+        if (!anySamples) {
+            messageManager.sendMessage(sender, "stats-empty");
+        }
+        
+        // Database executor and write-behind buffer
+        DatabaseExecutor executor = plugin.getDatabaseManager().getDatabaseExecutor();
+        if (executor != null) {
+            sender.sendMessage(messageManager.getMessage("stats-database", "%depth%", String.valueOf(executor.getQueueDepth()))
+                    .replace("%capacity%", String.valueOf(executor.getQueueCapacity()))
+                    .replace("%peak%", String.valueOf(executor.getPeakQueueDepth()))
+                    .replace("%rejected%", String.valueOf(executor.getRejectedTasks()))
+                    .replace("%completed%", String.valueOf(executor.getCompletedTasks())));
+        }
+        WriteBehindBuffer writeBuffer = plugin.getDatabaseManager().getWriteBuffer();
+        if (writeBuffer != null) {
+            sender.sendMessage(messageManager.getMessage("stats-write-behind", "%pending%", String.valueOf(writeBuffer.getPendingWrites()))
+                    .replace("%flushed%", String.valueOf(writeBuffer.getFlushedWrites()))
+                    .replace("%coalesced%", String.valueOf(writeBuffer.getCoalescedWrites())));
+        }
+        
+        // SQL statement timings per database operation
+        for (QueryStats.OperationSnapshot operation : plugin.getDatabaseManager().getQueryStats().snapshot()) {
+            sender.sendMessage(messageManager.getMessage("stats-query", "%operation%", operation.getOperation())
+                    .replace("%count%", String.valueOf(operation.getCount()))
+                    .replace("%mean%", formatMillis(operation.getMeanMicros()))
+                    .replace("%max%", formatMillis(operation.getMaxMicros()))
+                    .replace("%slow%", String.valueOf(operation.getSlowCount()))
+                    .replace("%errors%", String.valueOf(operation.getErrors())));
+        }
+        
+        // Broadcast queue and join storms
+        BroadcastQueue broadcastQueue = plugin.getBroadcastQueue();
+        sender.sendMessage(messageManager.getMessage("stats-broadcast", "%queued%", String.valueOf(broadcastQueue.getQueuedCount()))
+                .replace("%sent%", String.valueOf(broadcastQueue.getSentCount()))
+                .replace("%deduplicated%", String.valueOf(broadcastQueue.getDeduplicatedCount()))
+                .replace("%deferred%", String.valueOf(broadcastQueue.getDeferredTickCount())));
+        JoinStormCoalescer joinStorm = plugin.getJoinStormCoalescer();
+        sender.sendMessage(messageManager.getMessage("stats-join-storm", "%suppressed%", String.valueOf(joinStorm.getSuppressedCount()))
+                .replace("%digests%", String.valueOf(joinStorm.getDigestCount())));
+        
+        // Placeholder cache
+        PlaceholderCache placeholderCache = plugin.getPlaceholderCache();
+        sender.sendMessage(messageManager.getMessage("stats-placeholder-cache", "%hits%", String.valueOf(placeholderCache.getHits()))
+                .replace("%misses%", String.valueOf(placeholderCache.getMisses()))
+                .replace("%ratio%", String.format(Locale.ROOT, "%.1f", placeholderCache.getHitRatio() * 100))
+                .replace("%size%", String.valueOf(placeholderCache.size())));
+    }
+    
+    private String formatMillis(long micros) {
+        return String.format(Locale.ROOT, "%.2f", micros / 1000.0);
+    }
+
     @Override
     public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
         List<String> completions = new ArrayList<>();
@@ -285,7 +391,10 @@ public class CjmCommand implements CommandExecutor, TabCompleter {
             completions.add("resetplayer");
             completions.add("listplayers");
             completions.add("deleteplayer");
+            completions.add("stats");
             completions.add("help");
+        } else if (args.length == 2 && args[0].equalsIgnoreCase("stats")) {
+            completions.add("reset");
         } else if (args.length == 2 && args[0].equalsIgnoreCase("permission")) {
             // Forward tab completion to PermissionCommand
             String[] permissionArgs = new String[args.length - 1];
@@ -1,6 +1,7 @@
 package mc506lw.cjm.commands;
 
 import mc506lw.cjm.CustomJoinMessage;
+import mc506lw.cjm.database.PlayerMessageRecord;
 import mc506lw.cjm.utils.MessageLengthUtil;
 import mc506lw.cjm.utils.MessageManager;
 import mc506lw.cjm.utils.PermissionUtils;
@@ -58,10 +59,11 @@ public class SetQuitCommand implements CommandExecutor, TabCompleter {
             Player player = (Player) sender;
             
             // Get quit message asynchronously
-            CompletableFuture<String> futureMessage = plugin.getDatabaseManager().getQuitMessage(player.getUniqueId().toString());
+            CompletableFuture<PlayerMessageRecord> futureRecord = plugin.getDatabaseManager().getPlayerRecord(player.getUniqueId().toString());
             
             // Process the result when it's available
-            futureMessage.thenAccept(quitMessage -> {
+            futureRecord.thenAccept(record -> {
+                String quitMessage = record != null ? record.getQuitMessage() : null;
                 schedulerUtils.runTask(() -> {
                     if (plugin.getConfigManager().isPrefixSuffixMode()) {
                         // In prefix-suffix mode, extract and show current prefix and suffix
@@ -116,6 +118,7 @@ public class SetQuitCommand implements CommandExecutor, TabCompleter {
 
             Player player = (Player) sender;
             plugin.getDatabaseManager().removeQuitMessage(player.getUniqueId().toString());
+            plugin.getPlaceholderCache().invalidate(player.getUniqueId());
             messageManager.sendMessage(player, "quit-message-cleared");
             return true;
         }
@@ -159,9 +162,10 @@ public class SetQuitCommand implements CommandExecutor, TabCompleter {
             }
 
             // Get current message to extract suffix
-            CompletableFuture<String> futureMessage = plugin.getDatabaseManager().getQuitMessage(player.getUniqueId().toString());
+            CompletableFuture<PlayerMessageRecord> futureRecord = plugin.getDatabaseManager().getPlayerRecord(player.getUniqueId().toString());
             
-            futureMessage.thenAccept(currentMessage -> {
+            futureRecord.thenAccept(record -> {
+                String currentMessage = record != null ? record.getQuitMessage() : null;
                 schedulerUtils.runTask(() -> {
                     String suffix = "";
                     
@@ -182,6 +186,7 @@ public class SetQuitCommand implements CommandExecutor, TabCompleter {
                     
                     // Store the complete message in the database
                     plugin.getDatabaseManager().setQuitMessage(player.getUniqueId().toString(), player.getName(), completeMessage);
+                    plugin.getPlaceholderCache().invalidate(player.getUniqueId());
                     messageManager.sendMessage(player, "quit-prefix-set");
                 });
             });
@@ -228,9 +233,10 @@ public class SetQuitCommand implements CommandExecutor, TabCompleter {
             }
 
             // Get current message to extract prefix
-            CompletableFuture<String> futureMessage = plugin.getDatabaseManager().getQuitMessage(player.getUniqueId().toString());
+            CompletableFuture<PlayerMessageRecord> futureRecord = plugin.getDatabaseManager().getPlayerRecord(player.getUniqueId().toString());
             
-            futureMessage.thenAccept(currentMessage -> {
+            futureRecord.thenAccept(record -> {
+                String currentMessage = record != null ? record.getQuitMessage() : null;
                 schedulerUtils.runTask(() -> {
                     String prefix = "";
                     
@@ -251,6 +257,7 @@ public class SetQuitCommand implements CommandExecutor, TabCompleter {
                     
                     // Store the complete message in the database
                     plugin.getDatabaseManager().setQuitMessage(player.getUniqueId().toString(), player.getName(), completeMessage);
+                    plugin.getPlaceholderCache().invalidate(player.getUniqueId());
                     messageManager.sendMessage(player, "quit-suffix-set");
                 });
             });
@@ -270,6 +277,7 @@ public class SetQuitCommand implements CommandExecutor, TabCompleter {
                     }
 
                     plugin.getDatabaseManager().removeQuitMessage(target.getUniqueId().toString());
+                    plugin.getPlaceholderCache().invalidate(target.getUniqueId());
                     messageManager.sendMessage(sender, "player-message-cleared", "%player%", target.getName());
                     return true;
                 }
@@ -288,6 +296,7 @@ public class SetQuitCommand implements CommandExecutor, TabCompleter {
                   }
 
                   plugin.getDatabaseManager().setQuitMessage(target.getUniqueId().toString(), target.getName(), message.toString());
+                  plugin.getPlaceholderCache().invalidate(target.getUniqueId());
                   messageManager.sendMessage(sender, "player-quit-message-set", "%player%", target.getName());
                   return true;
             }
@@ -321,6 +330,7 @@ public class SetQuitCommand implements CommandExecutor, TabCompleter {
         }
 
         plugin.getDatabaseManager().setQuitMessage(player.getUniqueId().toString(), player.getName(), processedMessage);
+        plugin.getPlaceholderCache().invalidate(player.getUniqueId());
         messageManager.sendMessage(player, "quit-message-set");
         return true;
     }
@@ -0,0 +1,458 @@
+package mc506lw.cjm.database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 有界JDBC连接池
+ * 支持最小/最大连接数、借出时校验、空闲连接回收以及连接泄漏检测
+ * 借出的连接在close()时归还到连接池，而不是真正关闭
+ * 每个物理连接缓存最近使用的预编译语句，相同SQL再次prepareStatement时直接复用
+ */
+public class ConnectionPool {
+    // 连接在此时间内使用过则跳过借出校验，避免每次借出都多一次往返
+    private static final long VALIDATION_BYPASS_MILLIS = 500;
+    private static final long HOUSEKEEPING_PERIOD_MILLIS = 30000;
+
+    private final Logger logger;
+    private final ConnectionFactory connectionFactory;
+    private final int minSize;
+    private final int maxSize;
+    private final long connectionTimeoutMillis;
+    private final long idleTimeoutMillis;
+    // 0为禁用；启用后每次借出连接都会创建Throwable记录堆栈，仅用于调试
+    private final long leakDetectionThresholdMillis;
+    private final int validationTimeoutSeconds;
+    private final int statementCacheSize;
+    // 每次成功借出连接后以借出所用的时间（纳秒）调用，在借出连接的线程中执行
+    private final LongConsumer borrowListener;
+
+    private final BlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> borrowedConnections = ConcurrentHashMap.newKeySet();
+    private final Semaphore permits;
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    /**
+     * 创建物理连接的工厂
+     */
+    @FunctionalInterface
+    public interface ConnectionFactory {
+        Connection create() throws SQLException;
+    }
+
+    public ConnectionPool(Logger logger, ConnectionFactory connectionFactory, int minSize, int maxSize,
+                          long connectionTimeoutMillis, long idleTimeoutMillis,
+                          long leakDetectionThresholdMillis, int validationTimeoutSeconds,
+                          int statementCacheSize, LongConsumer borrowListener) {
+        this.logger = logger;
+        this.connectionFactory = connectionFactory;
+        this.maxSize = Math.max(1, maxSize);
+        this.minSize = Math.max(0, Math.min(minSize, this.maxSize));
+        this.connectionTimeoutMillis = connectionTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.leakDetectionThresholdMillis = leakDetectionThresholdMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.statementCacheSize = Math.max(0, statementCacheSize);
+        this.borrowListener = borrowListener;
+        this.permits = new Semaphore(this.maxSize, true);
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "CustomJoinMessage-Pool-Housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 启动连接池，创建最小数量的连接并开始定期维护
+     * @throws SQLException 如果无法创建初始连接
+     */
+    public void start() throws SQLException {
+        // 至少创建一个连接，确保数据库配置可用
+        PooledConnection first = new PooledConnection(connectionFactory.create());
+        idleConnections.offerFirst(first);
+        fillToMinimum();
+
+        housekeeper.scheduleAtFixedRate(this::housekeep, HOUSEKEEPING_PERIOD_MILLIS,
+                HOUSEKEEPING_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 从连接池借出一个连接，使用完毕后必须调用close()归还
+     * @return 数据库连接
+     * @throws SQLException 如果连接池已关闭、等待超时或无法创建连接
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long started = System.nanoTime();
+
+        try {
+            if (!permits.tryAcquire(connectionTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out after " + connectionTimeoutMillis
+                        + "ms waiting for a database connection (active: " + getActiveConnections() + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+
+        Connection handle;
+        try {
+            PooledConnection pooled;
+            while ((pooled = idleConnections.pollFirst()) != null) {
+                if (isUsable(pooled)) {
+                    break;
+                }
+                closeQuietly(pooled);
+            }
+
+            if (pooled == null) {
+                pooled = new PooledConnection(connectionFactory.create());
+            }
+
+            pooled.borrowedAt = System.currentTimeMillis();
+            pooled.borrowTrace = leakDetectionThresholdMillis > 0 ? new Throwable("Connection borrowed here") : null;
+            pooled.leakReported = false;
+            borrowedConnections.add(pooled);
+            handle = pooled.createHandle();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        borrowListener.accept(System.nanoTime() - started);
+        return handle;
+    }
+
+    private boolean isUsable(PooledConnection pooled) {
+        try {
+            if (pooled.connection.isClosed()) {
+                return false;
+            }
+            if (System.currentTimeMillis() - pooled.lastUsedAt < VALIDATION_BYPASS_MILLIS) {
+                return true;
+            }
+            return pooled.connection.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(PooledConnection pooled) {
+        borrowedConnections.remove(pooled);
+        pooled.borrowTrace = null;
+        pooled.releaseStatements();
+
+        try {
+            if (closed || pooled.connection.isClosed()) {
+                closeQuietly(pooled);
+                return;
+            }
+
+            if (!pooled.connection.getAutoCommit()) {
+                pooled.connection.rollback();
+                pooled.connection.setAutoCommit(true);
+            }
+
+            pooled.lastUsedAt = System.currentTimeMillis();
+            // 后进先出，保持常用连接处于热状态，便于空闲连接被回收
+            idleConnections.offerFirst(pooled);
+        } catch (SQLException e) {
+            logger.warning("Discarding broken database connection: " + e.getMessage());
+            closeQuietly(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void housekeep() {
+        try {
+            long now = System.currentTimeMillis();
+
+            // 回收超过空闲时间的连接，但保留最小连接数
+            if (idleTimeoutMillis > 0) {
+                Iterator<PooledConnection> iterator = idleConnections.descendingIterator();
+                while (iterator.hasNext() && getTotalConnections() > minSize) {
+                    PooledConnection pooled = iterator.next();
+                    if (now - pooled.lastUsedAt > idleTimeoutMillis && idleConnections.remove(pooled)) {
+                        closeQuietly(pooled);
+                    }
+                }
+            }
+
+            // 检测长时间未归还的连接
+            if (leakDetectionThresholdMillis > 0) {
+                for (PooledConnection pooled : borrowedConnections) {
+                    Throwable trace = pooled.borrowTrace;
+                    if (!pooled.leakReported && trace != null && now - pooled.borrowedAt > leakDetectionThresholdMillis) {
+                        pooled.leakReported = true;
+                        logger.log(Level.WARNING, "Possible database connection leak: connection held for "
+                                + (now - pooled.borrowedAt) + "ms", trace);
+                    }
+                }
+            }
+
+            fillToMinimum();
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Database connection pool housekeeping failed", e);
+        }
+    }
+
+    private void fillToMinimum() {
+        while (!closed && getTotalConnections() < minSize && permits.tryAcquire()) {
+            try {
+                idleConnections.offerLast(new PooledConnection(connectionFactory.create()));
+            } catch (SQLException e) {
+                logger.warning("Failed to create idle database connection: " + e.getMessage());
+                return;
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    private void closeQuietly(PooledConnection pooled) {
+        try {
+            pooled.connection.close();
+        } catch (SQLException ignored) {
+            // 连接已经不可用，忽略
+        }
+    }
+
+    /**
+     * 关闭连接池及所有空闲连接，借出的连接会在归还时关闭
+     */
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+
+        PooledConnection pooled;
+        while ((pooled = idleConnections.pollFirst()) != null) {
+            closeQuietly(pooled);
+        }
+
+        if (!borrowedConnections.isEmpty()) {
+            logger.warning("Closing connection pool with " + borrowedConnections.size() + " connection(s) still in use");
+        }
+    }
+
+    public int getTotalConnections() {
+        return idleConnections.size() + borrowedConnections.size();
+    }
+
+    public int getIdleConnections() {
+        return idleConnections.size();
+    }
+
+    public int getActiveConnections() {
+        return borrowedConnections.size();
+    }
+
+    public int getThreadsAwaitingConnection() {
+        return permits.getQueueLength();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * 连接池中的物理连接
+     */
+    private final class PooledConnection {
+        private final Connection connection;
+        // 只由借出该连接的线程访问，按访问顺序淘汰最久未使用的语句
+        private final Map<String, CachedStatement> statementCache = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() <= statementCacheSize) {
+                    return false;
+                }
+                eldest.getValue().evict();
+                return true;
+            }
+        };
+        private volatile long lastUsedAt = System.currentTimeMillis();
+        private volatile long borrowedAt;
+        private volatile Throwable borrowTrace;
+        private volatile boolean leakReported;
+
+        private PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * 为本次借出创建一个代理连接，close()时归还到连接池
+         */
+        private Connection createHandle() {
+            AtomicBoolean returned = new AtomicBoolean(false);
+            InvocationHandler handler = (proxy, method, args) -> invoke(returned, proxy, method, args);
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, handler);
+        }
+
+        private Object invoke(AtomicBoolean returned, Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "prepareStatement":
+                    if (statementCacheSize > 0 && args.length == 1 && !returned.get()) {
+                        return prepareCached((String) args[0]);
+                    }
+                    break;
+                case "close":
+                    if (returned.compareAndSet(false, true)) {
+                        release(this);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned.get() || connection.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + connection + "]";
+                default:
+                    break;
+            }
+
+            if (returned.get()) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+
+            try {
+                return method.invoke(connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private PreparedStatement prepareCached(String sql) throws SQLException {
+            CachedStatement cached = statementCache.get(sql);
+            if (cached != null && cached.evicted) {
+                statementCache.remove(sql);
+                cached = null;
+            }
+
+            if (cached == null) {
+                cached = new CachedStatement(connection.prepareStatement(sql));
+                statementCache.put(sql, cached);
+            } else if (cached.inUse) {
+                // 同一条SQL在一次借出中被同时使用，额外创建一个不缓存的语句
+                return connection.prepareStatement(sql);
+            }
+
+            cached.inUse = true;
+            return cached.handle;
+        }
+
+        /**
+         * 连接归还时，把未关闭的缓存语句标记为可用
+         */
+        private void releaseStatements() {
+            for (CachedStatement cached : statementCache.values()) {
+                if (cached.inUse) {
+                    cached.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * 缓存的预编译语句，close()时清空参数并留在缓存中，而不是真正关闭
+     */
+    private static final class CachedStatement {
+        private final PreparedStatement statement;
+        private final PreparedStatement handle;
+        private boolean inUse;
+        private boolean evicted;
+
+        private CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+            this.handle = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, this::invoke);
+        }
+
+        private Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (inUse) {
+                        release();
+                    }
+                    return null;
+                case "isClosed":
+                    return !inUse || statement.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "CachedStatement[" + statement + "]";
+                default:
+                    break;
+            }
+
+            if (!inUse) {
+                throw new SQLException("Statement has already been closed");
+            }
+
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private void release() {
+            inUse = false;
+            if (evicted) {
+                closeStatement();
+                return;
+            }
+
+            try {
+                statement.clearParameters();
+                statement.clearBatch();
+            } catch (SQLException e) {
+                // 语句已经不可用，不再复用
+                evicted = true;
+                closeStatement();
+            }
+        }
+
+        private void evict() {
+            evicted = true;
+            if (!inUse) {
+                closeStatement();
+            }
+        }
+
+        private void closeStatement() {
+            try {
+                statement.close();
+            } catch (SQLException ignored) {
+                // 语句已经不可用，忽略
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package mc506lw.cjm.database;
+
+import org.bukkit.Bukkit;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 插件专用的数据库任务执行器
+ * 使用有界队列，队列满时对异步调用者施加背压，对主线程调用者直接丢弃任务
+ */
+public class DatabaseExecutor {
+    private final ThreadPoolExecutor executor;
+    private final BlockingQueue<Runnable> queue;
+    private final long backpressureTimeoutMillis;
+    private final AtomicInteger peakQueueDepth = new AtomicInteger();
+    private final LongAdder rejectedTasks = new LongAdder();
+
+    public DatabaseExecutor(int threads, int queueCapacity, long backpressureTimeoutMillis) {
+        this.backpressureTimeoutMillis = backpressureTimeoutMillis;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+
+        int poolSize = Math.max(1, threads);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS, queue, runnable -> {
+            Thread thread = new Thread(runnable, "CustomJoinMessage-DB-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new BackpressurePolicy());
+    }
+
+    /**
+     * 提交数据库任务
+     * @param task 要执行的任务
+     * @throws RejectedExecutionException 如果队列已满且无法等待，或执行器已关闭
+     */
+    public void execute(Runnable task) {
+        executor.execute(task);
+        peakQueueDepth.accumulateAndGet(queue.size(), Math::max);
+    }
+
+    /**
+     * 停止接收新任务，并等待队列中的任务执行完毕
+     * @param timeoutMillis 最长等待时间（毫秒）
+     * @return 超时后被丢弃的任务数量
+     */
+    public int shutdown(long timeoutMillis) {
+        executor.shutdown();
+        try {
+            if (executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                return 0;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        List<Runnable> dropped = executor.shutdownNow();
+        return dropped.size();
+    }
+
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public int getQueueCapacity() {
+        return queue.size() + queue.remainingCapacity();
+    }
+
+    public int getPeakQueueDepth() {
+        return peakQueueDepth.get();
+    }
+
+    public int getActiveThreads() {
+        return executor.getActiveCount();
+    }
+
+    public int getThreadCount() {
+        return executor.getMaximumPoolSize();
+    }
+
+    public long getCompletedTasks() {
+        return executor.getCompletedTaskCount();
+    }
+
+    public long getRejectedTasks() {
+        return rejectedTasks.sum();
+    }
+
+    /**
+     * 队列满时的处理策略
+     * 主线程不能被阻塞，直接丢弃任务；其他线程最多等待backpressureTimeoutMillis
+     */
+    private class BackpressurePolicy implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor pool) {
+            if (pool.isShutdown()) {
+                rejectedTasks.increment();
+                throw new RejectedExecutionException("Database executor has been shut down");
+            }
+
+            if (!Bukkit.isPrimaryThread() && backpressureTimeoutMillis > 0) {
+                try {
+                    if (queue.offer(task, backpressureTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            rejectedTasks.increment();
+            throw new RejectedExecutionException("Database queue is full (" + queue.size() + " pending)");
+        }
+    }
+}
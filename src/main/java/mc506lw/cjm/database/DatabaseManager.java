@@ -2,7 +2,7 @@ package mc506lw.cjm.database;
 
 import mc506lw.cjm.CustomJoinMessage;
 import mc506lw.cjm.utils.ConfigManager;
-import mc506lw.cjm.utils.SchedulerUtils;
+import mc506lw.cjm.utils.LatencyStats;
 
 import java.io.File;
 import java.sql.Connection;
@@ -13,21 +13,31 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 public class DatabaseManager {
     private final CustomJoinMessage plugin;
-    private Connection connection;
+    private ConnectionPool connectionPool;
     private final String databaseType;
-    private final SchedulerUtils schedulerUtils;
+    private DatabaseExecutor databaseExecutor;
+    private WriteBehindBuffer writeBuffer;
+    private PlayerQueries queries;
+    private final PlayerRecordCache recordCache = new PlayerRecordCache();
+    private final QueryStats queryStats;
 
     public DatabaseManager(CustomJoinMessage plugin) {
         this.plugin = plugin;
-        this.schedulerUtils = plugin.getSchedulerUtils();
         this.databaseType = plugin.getConfigManager().getDatabaseType();
+        this.queryStats = new QueryStats(plugin.getLogger(), () -> plugin.getConfigManager().getSlowQueryThreshold());
     }
 
     public void initialize() {
+        ConfigManager config = plugin.getConfigManager();
+        databaseExecutor = new DatabaseExecutor(config.getExecutorThreads(), config.getExecutorQueueCapacity(),
+                config.getExecutorBackpressureTimeout());
+        
         try {
             if (databaseType.equalsIgnoreCase("sqlite")) {
                 initializeSQLite();
@@ -37,7 +47,11 @@ public class DatabaseManager {
                 plugin.getLogger().warning("Unknown database type: " + databaseType + ". Using SQLite instead.");
                 initializeSQLite();
             }
-            createTable();
+            try (Connection connection = connectionPool.getConnection()) {
+                createTable(connection);
+            }
+            queries = new PlayerQueries(getTableName(), getDialect());
+            createWriteBuffer();
             plugin.getLogger().info("Database connection established successfully.");
         } catch (SQLException e) {
             plugin.getLogger().severe("Failed to initialize database: " + e.getMessage());
@@ -51,19 +65,108 @@ public class DatabaseManager {
             dataFolder.mkdirs();
         }
         
-        String dbFile = plugin.getConfigManager().getSQLiteFile();
-        connection = DriverManager.getConnection("jdbc:sqlite:" + new File(dataFolder, dbFile).getAbsolutePath());
+        ConfigManager config = plugin.getConfigManager();
+        String dbFile = config.getSQLiteFile();
+        String url = "jdbc:sqlite:" + new File(dataFolder, dbFile).getAbsolutePath();
+        
+        // journal_mode is stored in the database file, so it only needs to be set once
+        boolean wal = config.isSQLiteWalEnabled() && enableWal(url);
+        String synchronous = getSQLiteSynchronous(config);
+        
+        // Without WAL readers block behind the single writer, so keep exactly one connection
+        int maxConnections = wal ? Math.max(1, config.getSQLiteMaxConnections()) : 1;
+        createConnectionPool(() -> {
+            Connection connection = DriverManager.getConnection(url);
+            try {
+                applySQLitePragmas(connection, synchronous);
+            } catch (SQLException e) {
+                connection.close();
+                throw e;
+            }
+            return connection;
+        }, 1, maxConnections);
+    }
+    
+    /**
+     * 将SQLite数据库切换到WAL日志模式
+     * @param url 数据库连接地址
+     * @return 是否成功启用WAL
+     */
+    private boolean enableWal(String url) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url);
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("PRAGMA journal_mode = WAL")) {
+            String mode = resultSet.next() ? resultSet.getString(1) : null;
+            if ("wal".equalsIgnoreCase(mode)) {
+                return true;
+            }
+            
+            // 例如数据库位于不支持共享内存的网络文件系统上
+            plugin.getLogger().warning("SQLite could not enable WAL mode (journal mode: " + mode + ")");
+            return false;
+        }
+    }
+    
+    /**
+     * 应用每个连接独立的SQLite性能设置
+     */
+    private void applySQLitePragmas(Connection connection, String synchronous) throws SQLException {
+        ConfigManager config = plugin.getConfigManager();
+        
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA busy_timeout = " + Math.max(0, config.getSQLiteBusyTimeout()));
+            statement.execute("PRAGMA synchronous = " + synchronous);
+            // 负数表示以KiB为单位而不是页数
+            statement.execute("PRAGMA cache_size = -" + Math.max(0, config.getSQLiteCacheSize()));
+            statement.execute("PRAGMA mmap_size = " + Math.max(0, config.getSQLiteMmapSize()));
+            statement.execute("PRAGMA temp_store = MEMORY");
+        }
+    }
+    
+    private String getSQLiteSynchronous(ConfigManager config) {
+        String synchronous = config.getSQLiteSynchronous().toUpperCase(Locale.ROOT);
+        switch (synchronous) {
+            case "OFF":
+            case "NORMAL":
+            case "FULL":
+            case "EXTRA":
+                return synchronous;
+            default:
+                plugin.getLogger().warning("Unknown SQLite synchronous level: " + synchronous + ". Using NORMAL instead.");
+                return "NORMAL";
+        }
     }
 
     private void initializeMySQL() throws SQLException {
         ConfigManager config = plugin.getConfigManager();
-        String url = "jdbc:mysql://" + config.getMySQLHost() + ":" + config.getMySQLPort() + "/" + config.getMySQLDatabase();
-        connection = DriverManager.getConnection(url, config.getMySQLUsername(), config.getMySQLPassword());
+        // Use server-side prepared statements so cached statements skip parsing on the server as well,
+        // and let the driver send batched writes as multi-row statements
+        String url = "jdbc:mysql://" + config.getMySQLHost() + ":" + config.getMySQLPort() + "/" + config.getMySQLDatabase() +
+                "?useServerPrepStmts=true&cachePrepStmts=true&prepStmtCacheSize=" + Math.max(25, config.getPoolStatementCacheSize()) +
+                "&prepStmtCacheSqlLimit=2048&rewriteBatchedStatements=true";
+        createConnectionPool(() -> DriverManager.getConnection(url, config.getMySQLUsername(), config.getMySQLPassword()),
+                config.getPoolMinSize(), config.getPoolMaxSize());
     }
 
-    private void createTable() throws SQLException {
-        String tableName = databaseType.equalsIgnoreCase("mysql") ? 
-            plugin.getConfigManager().getMySQLTable() : "joinmessages";
+    private void createConnectionPool(ConnectionPool.ConnectionFactory factory, int minSize, int maxSize) throws SQLException {
+        ConfigManager config = plugin.getConfigManager();
+        connectionPool = new ConnectionPool(plugin.getLogger(), factory, minSize, maxSize,
+                config.getPoolConnectionTimeout(), config.getPoolIdleTimeout(),
+                config.getPoolLeakDetectionThreshold(), config.getPoolValidationTimeout(),
+                config.getPoolStatementCacheSize(), queryStats::recordConnectionWait);
+        connectionPool.start();
+    }
+
+    private void createWriteBuffer() {
+        ConfigManager config = plugin.getConfigManager();
+        // 关闭写后缓冲时每次修改都立即写入
+        int batchSize = config.isWriteBehindEnabled() ? config.getWriteBehindBatchSize() : 1;
+        writeBuffer = new WriteBehindBuffer(plugin.getLogger(), connectionPool, queries, queryStats,
+                config.getWriteBehindFlushInterval(), batchSize);
+    }
+
+    private void createTable(Connection connection) throws SQLException {
+        String tableName = getTableName();
             
         String query = "CREATE TABLE IF NOT EXISTS " + tableName + " (" +
                 "uuid VARCHAR(36) PRIMARY KEY," +
@@ -77,7 +180,7 @@ public class DatabaseManager {
                 ")";
         
         try (Statement statement = connection.createStatement()) {
-            statement.execute(query);
+            queryStats.execute("create table", query, () -> statement.execute(query));
         }
         
         // Check if we need to add the quit message columns (for existing databases)
@@ -88,9 +191,9 @@ public class DatabaseManager {
                     if (!rs.next()) {
                         // Column doesn't exist, add it
                         try (Statement alterStatement = connection.createStatement()) {
-                            alterStatement.execute("ALTER TABLE " + tableName + " ADD COLUMN quit_message TEXT");
-                            alterStatement.execute("ALTER TABLE " + tableName + " ADD COLUMN quit_prefix TEXT");
-                            alterStatement.execute("ALTER TABLE " + tableName + " ADD COLUMN quit_suffix TEXT");
+                            addColumn(alterStatement, "ALTER TABLE " + tableName + " ADD COLUMN quit_message TEXT");
+                            addColumn(alterStatement, "ALTER TABLE " + tableName + " ADD COLUMN quit_prefix TEXT");
+                            addColumn(alterStatement, "ALTER TABLE " + tableName + " ADD COLUMN quit_suffix TEXT");
                             plugin.getLogger().info("Added quit message columns to existing database table");
                         }
                     }
@@ -101,9 +204,9 @@ public class DatabaseManager {
                     if (!rs.next()) {
                         // Column doesn't exist, add it
                         try (Statement alterStatement = connection.createStatement()) {
-                            alterStatement.execute("ALTER TABLE " + tableName + " ADD COLUMN quit_message TEXT");
-                            alterStatement.execute("ALTER TABLE " + tableName + " ADD COLUMN quit_prefix TEXT");
-                            alterStatement.execute("ALTER TABLE " + tableName + " ADD COLUMN quit_suffix TEXT");
+                            addColumn(alterStatement, "ALTER TABLE " + tableName + " ADD COLUMN quit_message TEXT");
+                            addColumn(alterStatement, "ALTER TABLE " + tableName + " ADD COLUMN quit_prefix TEXT");
+                            addColumn(alterStatement, "ALTER TABLE " + tableName + " ADD COLUMN quit_suffix TEXT");
                             plugin.getLogger().info("Added quit message columns to existing database table");
                         }
                     }
@@ -114,445 +217,198 @@ public class DatabaseManager {
         }
     }
 
+    private void addColumn(Statement statement, String sql) throws SQLException {
+        queryStats.execute("create table", sql, () -> statement.execute(sql));
+    }
+
     public void setJoinMessage(String uuid, String username, String message) {
-        schedulerUtils.runTaskAsynchronously(() -> {
-            String tableName = databaseType.equalsIgnoreCase("mysql") ? 
-                plugin.getConfigManager().getMySQLTable() : "joinmessages";
-                
-            if (databaseType.equalsIgnoreCase("mysql")) {
-                // For MySQL, use ON DUPLICATE KEY UPDATE to preserve other columns
-                String query = "INSERT INTO " + tableName + " (uuid, username, message) VALUES (?, ?, ?) " +
-                        "ON DUPLICATE KEY UPDATE username = VALUES(username), message = VALUES(message)";
-                
-                try (PreparedStatement statement = connection.prepareStatement(query)) {
-                    statement.setString(1, uuid);
-                    statement.setString(2, username);
-                    statement.setString(3, message);
-                    statement.executeUpdate();
-                } catch (SQLException e) {
-                    plugin.getLogger().severe("Failed to set join message: " + e.getMessage());
-                }
-            } else {
-                // For SQLite, we need to preserve existing data
-                try {
-                    // First check if the record exists
-                    String checkQuery = "SELECT uuid FROM " + tableName + " WHERE uuid = ?";
-                    boolean recordExists = false;
-                    
-                    try (PreparedStatement checkStatement = connection.prepareStatement(checkQuery)) {
-                        checkStatement.setString(1, uuid);
-                        ResultSet resultSet = checkStatement.executeQuery();
-                        recordExists = resultSet.next();
+        // 先加入写后缓冲区，之后开始的预加载一定能读到这次修改
+        writeBuffer.setColumn(uuid, username, PlayerQueries.COLUMN_JOIN_MESSAGE, message);
+        recordCache.update(uuid, record -> record.withJoinMessage(username, message));
+    }
+
+    /**
+     * 一次查询获取玩家的完整消息记录
+     * @param uuid 玩家的UUID
+     * @return CompletableFuture<PlayerMessageRecord> 玩家记录，如果不存在则返回null
+     */
+    public CompletableFuture<PlayerMessageRecord> getPlayerRecord(String uuid) {
+        // 叠加尚未写入数据库的修改，保证读到自己的写入
+        return supplyAsync("get player record", uuid, null,
+                () -> writeBuffer.read(uuid, () -> loadPlayerRecord("get player record", uuid)));
+    }
+    
+    /**
+     * 在当前线程中预加载玩家记录到缓存，仅应在异步线程（如AsyncPlayerPreLoginEvent）中调用
+     * @param uuid 玩家的UUID
+     */
+    public void preloadPlayerRecord(String uuid) {
+        DatabaseOperationEvent event = new DatabaseOperationEvent();
+        event.begin();
+        long started = System.nanoTime();
+        PlayerMessageRecord record = null;
+        PlayerMessageRecord cached = null;
+        recordCache.beginPreload(uuid);
+        try {
+            record = writeBuffer.read(uuid, () -> loadPlayerRecord("preload player record", uuid));
+            cached = record != null ? record : PlayerMessageRecord.empty(uuid);
+        } catch (SQLException | RuntimeException e) {
+            plugin.getLogger().warning("Failed to preload player record: " + e.getMessage());
+        } finally {
+            // 读取期间记录被修改时不缓存，加入时回退到数据库查询
+            recordCache.completePreload(uuid, cached);
+            plugin.getLatencyStats().recordSince(LatencyStats.Stage.DB_QUERY, started);
+            commitEvent(event, "preload player record", uuid, DatabaseOperationEvent.rowsOf(record), 0L);
+        }
+    }
+    
+    /**
+     * 获取在线玩家消息记录缓存
+     * @return 玩家记录缓存
+     */
+    public PlayerRecordCache getRecordCache() {
+        return recordCache;
+    }
+    
+    /**
+     * 从数据库读取玩家记录，不叠加写后缓冲区中的修改
+     * @param operation 所属的操作名称，用于执行时间统计
+     * @param uuid 玩家的UUID
+     */
+    private PlayerMessageRecord loadPlayerRecord(String operation, String uuid) throws SQLException {
+        try (Connection connection = connectionPool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(queries.selectRecord)) {
+            statement.setString(1, uuid);
+            
+            return queryStats.execute(operation, queries.selectRecord, () -> {
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    if (!resultSet.next()) {
+                        return null;
                     }
                     
-                    if (recordExists) {
-                        // Update only the message column, preserving other columns
-                        String updateQuery = "UPDATE " + tableName + " SET username = ?, message = ? WHERE uuid = ?";
-                        try (PreparedStatement updateStatement = connection.prepareStatement(updateQuery)) {
-                            updateStatement.setString(1, username);
-                            updateStatement.setString(2, message);
-                            updateStatement.setString(3, uuid);
-                            updateStatement.executeUpdate();
-                        }
-                    } else {
-                        // Insert a new record
-                        String insertQuery = "INSERT INTO " + tableName + " (uuid, username, message) VALUES (?, ?, ?)";
-                        try (PreparedStatement insertStatement = connection.prepareStatement(insertQuery)) {
-                            insertStatement.setString(1, uuid);
-                            insertStatement.setString(2, username);
-                            insertStatement.setString(3, message);
-                            insertStatement.executeUpdate();
-                        }
-                    }
-                } catch (SQLException e) {
-                    plugin.getLogger().severe("Failed to set join message: " + e.getMessage());
+                    return new PlayerMessageRecord(
+                            resultSet.getString("uuid"),
+                            resultSet.getString("username"),
+                            resultSet.getString("message"),
+                            resultSet.getString("prefix"),
+                            resultSet.getString("suffix"),
+                            resultSet.getString("quit_message"),
+                            resultSet.getString("quit_prefix"),
+                            resultSet.getString("quit_suffix"));
                 }
-            }
-        });
+            });
+        }
     }
 
     public CompletableFuture<String> getJoinMessage(String uuid) {
-        CompletableFuture<String> future = new CompletableFuture<>();
-        
-        schedulerUtils.runTaskAsynchronously(() -> {
-            String tableName = databaseType.equalsIgnoreCase("mysql") ? 
-                plugin.getConfigManager().getMySQLTable() : "joinmessages";
-                
-            String query = "SELECT message FROM " + tableName + " WHERE uuid = ?";
-            
-            try (PreparedStatement statement = connection.prepareStatement(query)) {
-                statement.setString(1, uuid);
-                ResultSet resultSet = statement.executeQuery();
-                
-                if (resultSet.next()) {
-                    future.complete(resultSet.getString("message"));
-                } else {
-                    future.complete(null);
-                }
-            } catch (SQLException e) {
-                plugin.getLogger().severe("Failed to get join message: " + e.getMessage());
-                future.complete(null);
-            }
-        });
-        
-        return future;
+        return getPlayerRecord(uuid).thenApply(record -> record != null ? record.getJoinMessage() : null);
     }
 
     public CompletableFuture<String> getJoinPrefix(String uuid) {
-        CompletableFuture<String> future = new CompletableFuture<>();
-        
-        schedulerUtils.runTaskAsynchronously(() -> {
-            String tableName = databaseType.equalsIgnoreCase("mysql") ? 
-                plugin.getConfigManager().getMySQLTable() : "joinmessages";
-                
-            String query = "SELECT prefix FROM " + tableName + " WHERE uuid = ?";
-            
-            try (PreparedStatement statement = connection.prepareStatement(query)) {
-                statement.setString(1, uuid);
-                ResultSet resultSet = statement.executeQuery();
-                
-                if (resultSet.next()) {
-                    future.complete(resultSet.getString("prefix"));
-                } else {
-                    future.complete(null);
-                }
-            } catch (SQLException e) {
-                plugin.getLogger().severe("Failed to get join prefix: " + e.getMessage());
-                future.complete(null);
-            }
-        });
-        
-        return future;
+        return getPlayerRecord(uuid).thenApply(record -> record != null ? record.getJoinPrefix() : null);
     }
 
     public CompletableFuture<String> getJoinSuffix(String uuid) {
-        CompletableFuture<String> future = new CompletableFuture<>();
-        
-        schedulerUtils.runTaskAsynchronously(() -> {
-            String tableName = databaseType.equalsIgnoreCase("mysql") ? 
-                plugin.getConfigManager().getMySQLTable() : "joinmessages";
-                
-            String query = "SELECT suffix FROM " + tableName + " WHERE uuid = ?";
-            
-            try (PreparedStatement statement = connection.prepareStatement(query)) {
-                statement.setString(1, uuid);
-                ResultSet resultSet = statement.executeQuery();
-                
-                if (resultSet.next()) {
-                    future.complete(resultSet.getString("suffix"));
-                } else {
-                    future.complete(null);
-                }
-            } catch (SQLException e) {
-                plugin.getLogger().severe("Failed to get join suffix: " + e.getMessage());
-                future.complete(null);
-            }
-        });
-        
-        return future;
+        return getPlayerRecord(uuid).thenApply(record -> record != null ? record.getJoinSuffix() : null);
     }
 
     public void removeJoinMessage(String uuid) {
-        schedulerUtils.runTaskAsynchronously(() -> {
-            String tableName = databaseType.equalsIgnoreCase("mysql") ? 
-                plugin.getConfigManager().getMySQLTable() : "joinmessages";
-                
-            String query = "DELETE FROM " + tableName + " WHERE uuid = ?";
-            
-            try (PreparedStatement statement = connection.prepareStatement(query)) {
-                statement.setString(1, uuid);
-                statement.executeUpdate();
-            } catch (SQLException e) {
-                plugin.getLogger().severe("Failed to remove join message: " + e.getMessage());
-            }
-        });
+        writeBuffer.deleteRow(uuid);
+        recordCache.update(uuid, record -> PlayerMessageRecord.empty(uuid));
     }
 
+    /**
+     * 关闭数据库，等待队列中的任务执行完毕并写入缓冲区中的修改后再关闭连接池
+     */
     public void close() {
-        try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
+        if (databaseExecutor != null) {
+            int dropped = databaseExecutor.shutdown(plugin.getConfigManager().getExecutorShutdownTimeout());
+            if (dropped > 0) {
+                plugin.getLogger().warning("Database shutdown timed out, " + dropped + " pending task(s) were dropped");
             }
-        } catch (SQLException e) {
-            plugin.getLogger().severe("Failed to close database connection: " + e.getMessage());
+        }
+        
+        if (writeBuffer != null) {
+            writeBuffer.close();
+        }
+        
+        if (connectionPool != null) {
+            connectionPool.close();
         }
     }
     
     /**
-     * 获取数据库连接
+     * 从连接池借出一个数据库连接，使用完毕后必须关闭以归还到连接池
      * @return 数据库连接
+     * @throws SQLException 如果无法获取连接
      */
-    public Connection getConnection() {
-        return connection;
+    public Connection getConnection() throws SQLException {
+        return connectionPool.getConnection();
+    }
+    
+    /**
+     * 获取数据库连接池
+     * @return 连接池
+     */
+    public ConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+    
+    /**
+     * 获取数据库任务执行器
+     * @return 数据库任务执行器
+     */
+    public DatabaseExecutor getDatabaseExecutor() {
+        return databaseExecutor;
+    }
+
+    /**
+     * 获取写后缓冲区
+     * @return 写后缓冲区
+     */
+    public WriteBehindBuffer getWriteBuffer() {
+        return writeBuffer;
+    }
+
+    /**
+     * 获取SQL语句的执行时间统计
+     * @return 执行时间统计
+     */
+    public QueryStats getQueryStats() {
+        return queryStats;
     }
 
     // Quit message methods
     public void setQuitMessage(String uuid, String username, String message) {
-        schedulerUtils.runTaskAsynchronously(() -> {
-            String tableName = databaseType.equalsIgnoreCase("mysql") ? 
-                plugin.getConfigManager().getMySQLTable() : "joinmessages";
-                
-            if (databaseType.equalsIgnoreCase("mysql")) {
-                // For MySQL, use ON DUPLICATE KEY UPDATE to preserve other columns
-                String query = "INSERT INTO " + tableName + " (uuid, username, quit_message) VALUES (?, ?, ?) " +
-                        "ON DUPLICATE KEY UPDATE username = VALUES(username), quit_message = VALUES(quit_message)";
-                
-                try (PreparedStatement statement = connection.prepareStatement(query)) {
-                    statement.setString(1, uuid);
-                    statement.setString(2, username);
-                    statement.setString(3, message);
-                    statement.executeUpdate();
-                } catch (SQLException e) {
-                    plugin.getLogger().severe("Failed to set quit message: " + e.getMessage());
-                }
-            } else {
-                // For SQLite, we need to preserve existing data
-                try {
-                    // First check if the record exists
-                    String checkQuery = "SELECT uuid FROM " + tableName + " WHERE uuid = ?";
-                    boolean recordExists = false;
-                    
-                    try (PreparedStatement checkStatement = connection.prepareStatement(checkQuery)) {
-                        checkStatement.setString(1, uuid);
-                        ResultSet resultSet = checkStatement.executeQuery();
-                        recordExists = resultSet.next();
-                    }
-                    
-                    if (recordExists) {
-                        // Update only the quit_message column, preserving other columns
-                        String updateQuery = "UPDATE " + tableName + " SET username = ?, quit_message = ? WHERE uuid = ?";
-                        try (PreparedStatement updateStatement = connection.prepareStatement(updateQuery)) {
-                            updateStatement.setString(1, username);
-                            updateStatement.setString(2, message);
-                            updateStatement.setString(3, uuid);
-                            updateStatement.executeUpdate();
-                        }
-                    } else {
-                        // Insert a new record
-                        String insertQuery = "INSERT INTO " + tableName + " (uuid, username, quit_message) VALUES (?, ?, ?)";
-                        try (PreparedStatement insertStatement = connection.prepareStatement(insertQuery)) {
-                            insertStatement.setString(1, uuid);
-                            insertStatement.setString(2, username);
-                            insertStatement.setString(3, message);
-                            insertStatement.executeUpdate();
-                        }
-                    }
-                } catch (SQLException e) {
-                    plugin.getLogger().severe("Failed to set quit message: " + e.getMessage());
-                }
-            }
-        });
+        writeBuffer.setColumn(uuid, username, PlayerQueries.COLUMN_QUIT_MESSAGE, message);
+        recordCache.update(uuid, record -> record.withQuitMessage(username, message));
     }
     
     public void setQuitPrefix(String uuid, String username, String prefix) {
-        schedulerUtils.runTaskAsynchronously(() -> {
-            String tableName = databaseType.equalsIgnoreCase("mysql") ? 
-                plugin.getConfigManager().getMySQLTable() : "joinmessages";
-                
-            if (databaseType.equalsIgnoreCase("mysql")) {
-                // For MySQL, use ON DUPLICATE KEY UPDATE to preserve other columns
-                String query = "INSERT INTO " + tableName + " (uuid, username, quit_prefix) VALUES (?, ?, ?) " +
-                        "ON DUPLICATE KEY UPDATE username = VALUES(username), quit_prefix = VALUES(quit_prefix)";
-                
-                try (PreparedStatement statement = connection.prepareStatement(query)) {
-                    statement.setString(1, uuid);
-                    statement.setString(2, username);
-                    statement.setString(3, prefix);
-                    statement.executeUpdate();
-                } catch (SQLException e) {
-                    plugin.getLogger().severe("Failed to set quit prefix: " + e.getMessage());
-                }
-            } else {
-                // For SQLite, we need to preserve existing data
-                try {
-                    // First check if the record exists
-                    String checkQuery = "SELECT uuid FROM " + tableName + " WHERE uuid = ?";
-                    boolean recordExists = false;
-                    
-                    try (PreparedStatement checkStatement = connection.prepareStatement(checkQuery)) {
-                        checkStatement.setString(1, uuid);
-                        ResultSet resultSet = checkStatement.executeQuery();
-                        recordExists = resultSet.next();
-                    }
-                    
-                    if (recordExists) {
-                        // Update only the quit_prefix column, preserving other columns
-                        String updateQuery = "UPDATE " + tableName + " SET username = ?, quit_prefix = ? WHERE uuid = ?";
-                        try (PreparedStatement updateStatement = connection.prepareStatement(updateQuery)) {
-                            updateStatement.setString(1, username);
-                            updateStatement.setString(2, prefix);
-                            updateStatement.setString(3, uuid);
-                            updateStatement.executeUpdate();
-                        }
-                    } else {
-                        // Insert a new record
-                        String insertQuery = "INSERT INTO " + tableName + " (uuid, username, quit_prefix) VALUES (?, ?, ?)";
-                        try (PreparedStatement insertStatement = connection.prepareStatement(insertQuery)) {
-                            insertStatement.setString(1, uuid);
-                            insertStatement.setString(2, username);
-                            insertStatement.setString(3, prefix);
-                            insertStatement.executeUpdate();
-                        }
-                    }
-                } catch (SQLException e) {
-                    plugin.getLogger().severe("Failed to set quit prefix: " + e.getMessage());
-                }
-            }
-        });
+        writeBuffer.setColumn(uuid, username, PlayerQueries.COLUMN_QUIT_PREFIX, prefix);
+        recordCache.update(uuid, record -> record.withQuitPrefix(username, prefix));
     }
     
     public void setQuitSuffix(String uuid, String username, String suffix) {
-        schedulerUtils.runTaskAsynchronously(() -> {
-            String tableName = databaseType.equalsIgnoreCase("mysql") ? 
-                plugin.getConfigManager().getMySQLTable() : "joinmessages";
-                
-            if (databaseType.equalsIgnoreCase("mysql")) {
-                // For MySQL, use ON DUPLICATE KEY UPDATE to preserve other columns
-                String query = "INSERT INTO " + tableName + " (uuid, username, quit_suffix) VALUES (?, ?, ?) " +
-                        "ON DUPLICATE KEY UPDATE username = VALUES(username), quit_suffix = VALUES(quit_suffix)";
-                
-                try (PreparedStatement statement = connection.prepareStatement(query)) {
-                    statement.setString(1, uuid);
-                    statement.setString(2, username);
-                    statement.setString(3, suffix);
-                    statement.executeUpdate();
-                } catch (SQLException e) {
-                    plugin.getLogger().severe("Failed to set quit suffix: " + e.getMessage());
-                }
-            } else {
-                // For SQLite, we need to preserve existing data
-                try {
-                    // First check if the record exists
-                    String checkQuery = "SELECT uuid FROM " + tableName + " WHERE uuid = ?";
-                    boolean recordExists = false;
-                    
-                    try (PreparedStatement checkStatement = connection.prepareStatement(checkQuery)) {
-                        checkStatement.setString(1, uuid);
-                        ResultSet resultSet = checkStatement.executeQuery();
-                        recordExists = resultSet.next();
-                    }
-                    
-                    if (recordExists) {
-                        // Update only the quit_suffix column, preserving other columns
-                        String updateQuery = "UPDATE " + tableName + " SET username = ?, quit_suffix = ? WHERE uuid = ?";
-                        try (PreparedStatement updateStatement = connection.prepareStatement(updateQuery)) {
-                            updateStatement.setString(1, username);
-                            updateStatement.setString(2, suffix);
-                            updateStatement.setString(3, uuid);
-                            updateStatement.executeUpdate();
-                        }
-                    } else {
-                        // Insert a new record
-                        String insertQuery = "INSERT INTO " + tableName + " (uuid, username, quit_suffix) VALUES (?, ?, ?)";
-                        try (PreparedStatement insertStatement = connection.prepareStatement(insertQuery)) {
-                            insertStatement.setString(1, uuid);
-                            insertStatement.setString(2, username);
-                            insertStatement.setString(3, suffix);
-                            insertStatement.executeUpdate();
-                        }
-                    }
-                } catch (SQLException e) {
-                    plugin.getLogger().severe("Failed to set quit suffix: " + e.getMessage());
-                }
-            }
-        });
+        writeBuffer.setColumn(uuid, username, PlayerQueries.COLUMN_QUIT_SUFFIX, suffix);
+        recordCache.update(uuid, record -> record.withQuitSuffix(username, suffix));
     }
 
     public CompletableFuture<String> getQuitMessage(String uuid) {
-        CompletableFuture<String> future = new CompletableFuture<>();
-        
-        schedulerUtils.runTaskAsynchronously(() -> {
-            String tableName = databaseType.equalsIgnoreCase("mysql") ? 
-                plugin.getConfigManager().getMySQLTable() : "joinmessages";
-                
-            String query = "SELECT quit_message FROM " + tableName + " WHERE uuid = ?";
-            
-            try (PreparedStatement statement = connection.prepareStatement(query)) {
-                statement.setString(1, uuid);
-                ResultSet resultSet = statement.executeQuery();
-                
-                if (resultSet.next()) {
-                    future.complete(resultSet.getString("quit_message"));
-                } else {
-                    future.complete(null);
-                }
-            } catch (SQLException e) {
-                plugin.getLogger().severe("Failed to get quit message: " + e.getMessage());
-                future.complete(null);
-            }
-        });
-        
-        return future;
+        return getPlayerRecord(uuid).thenApply(record -> record != null ? record.getQuitMessage() : null);
     }
 
     public CompletableFuture<String> getQuitPrefix(String uuid) {
-        CompletableFuture<String> future = new CompletableFuture<>();
-        
-        schedulerUtils.runTaskAsynchronously(() -> {
-            String tableName = databaseType.equalsIgnoreCase("mysql") ? 
-                plugin.getConfigManager().getMySQLTable() : "joinmessages";
-                
-            String query = "SELECT quit_prefix FROM " + tableName + " WHERE uuid = ?";
-            
-            try (PreparedStatement statement = connection.prepareStatement(query)) {
-                statement.setString(1, uuid);
-                ResultSet resultSet = statement.executeQuery();
-                
-                if (resultSet.next()) {
-                    future.complete(resultSet.getString("quit_prefix"));
-                } else {
-                    future.complete(null);
-                }
-            } catch (SQLException e) {
-                plugin.getLogger().severe("Failed to get quit prefix: " + e.getMessage());
-                future.complete(null);
-            }
-        });
-        
-        return future;
+        return getPlayerRecord(uuid).thenApply(record -> record != null ? record.getQuitPrefix() : null);
     }
 
     public CompletableFuture<String> getQuitSuffix(String uuid) {
-        CompletableFuture<String> future = new CompletableFuture<>();
-        
-        schedulerUtils.runTaskAsynchronously(() -> {
-            String tableName = databaseType.equalsIgnoreCase("mysql") ? 
-                plugin.getConfigManager().getMySQLTable() : "joinmessages";
-                
-            String query = "SELECT quit_suffix FROM " + tableName + " WHERE uuid = ?";
-            
-            try (PreparedStatement statement = connection.prepareStatement(query)) {
-                statement.setString(1, uuid);
-                ResultSet resultSet = statement.executeQuery();
-                
-                if (resultSet.next()) {
-                    future.complete(resultSet.getString("quit_suffix"));
-                } else {
-                    future.complete(null);
-                }
-            } catch (SQLException e) {
-                plugin.getLogger().severe("Failed to get quit suffix: " + e.getMessage());
-                future.complete(null);
-            }
-        });
-        
-        return future;
+        return getPlayerRecord(uuid).thenApply(record -> record != null ? record.getQuitSuffix() : null);
     }
 
     public void removeQuitMessage(String uuid) {
-        schedulerUtils.runTaskAsynchronously(() -> {
-            String tableName = databaseType.equalsIgnoreCase("mysql") ? 
-                plugin.getConfigManager().getMySQLTable() : "joinmessages";
-                
-            String query = "UPDATE " + tableName + " SET quit_message = NULL, quit_prefix = NULL, quit_suffix = NULL WHERE uuid = ?";
-            
-            try (PreparedStatement statement = connection.prepareStatement(query)) {
-                statement.setString(1, uuid);
-                statement.executeUpdate();
-            } catch (SQLException e) {
-                plugin.getLogger().severe("Failed to remove quit message: " + e.getMessage());
-            }
-        });
+        writeBuffer.clearQuitMessage(uuid);
+        recordCache.update(uuid, PlayerMessageRecord::withoutQuitMessage);
     }
     
     /**
@@ -561,26 +417,21 @@ public class DatabaseManager {
      * @return CompletableFuture<Boolean> 如果玩家存在返回true，否则返回false
      */
     public CompletableFuture<Boolean> playerExists(String uuid) {
-        CompletableFuture<Boolean> future = new CompletableFuture<>();
-        
-        schedulerUtils.runTaskAsynchronously(() -> {
-            String tableName = databaseType.equalsIgnoreCase("mysql") ? 
-                plugin.getConfigManager().getMySQLTable() : "joinmessages";
-                
-            String query = "SELECT uuid FROM " + tableName + " WHERE uuid = ?";
+        return supplyAsync("check if player exists", uuid, false, () -> {
+            // 先写入缓冲区中的修改，使查询结果包含这些修改
+            writeBuffer.flush();
             
-            try (PreparedStatement statement = connection.prepareStatement(query)) {
+            try (Connection connection = connectionPool.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(queries.selectExists)) {
                 statement.setString(1, uuid);
-                ResultSet resultSet = statement.executeQuery();
                 
-                future.complete(resultSet.next());
-            } catch (SQLException e) {
-                plugin.getLogger().severe("Failed to check if player exists: " + e.getMessage());
-                future.complete(false);
+                return queryStats.execute("check if player exists", queries.selectExists, () -> {
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        return resultSet.next();
+                    }
+                });
             }
         });
-        
-        return future;
     }
     
     /**
@@ -589,30 +440,21 @@ public class DatabaseManager {
      * @return CompletableFuture<String> 玩家的UUID，如果不存在则返回null
      */
     public CompletableFuture<String> getPlayerUuid(String username) {
-        CompletableFuture<String> future = new CompletableFuture<>();
-        
-        schedulerUtils.runTaskAsynchronously(() -> {
-            String tableName = databaseType.equalsIgnoreCase("mysql") ? 
-                plugin.getConfigManager().getMySQLTable() : "joinmessages";
-                
-            String query = "SELECT uuid FROM " + tableName + " WHERE username = ?";
+        return supplyAsync("get player UUID", null, () -> {
+            // 先写入缓冲区中的修改，使查询结果包含这些修改
+            writeBuffer.flush();
             
-            try (PreparedStatement statement = connection.prepareStatement(query)) {
+            try (Connection connection = connectionPool.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(queries.selectUuidByUsername)) {
                 statement.setString(1, username);
-                ResultSet resultSet = statement.executeQuery();
                 
-                if (resultSet.next()) {
-                    future.complete(resultSet.getString("uuid"));
-                } else {
-                    future.complete(null);
-                }
-            } catch (SQLException e) {
-                plugin.getLogger().severe("Failed to get player UUID: " + e.getMessage());
-                future.complete(null);
+                return queryStats.execute("get player UUID", queries.selectUuidByUsername, () -> {
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        return resultSet.next() ? resultSet.getString("uuid") : null;
+                    }
+                });
             }
         });
-        
-        return future;
     }
     
     /**
@@ -620,32 +462,28 @@ public class DatabaseManager {
      * @return CompletableFuture<List<PlayerInfo>> 包含所有玩家信息的列表
      */
     public CompletableFuture<List<PlayerInfo>> getAllPlayers() {
-        CompletableFuture<List<PlayerInfo>> future = new CompletableFuture<>();
-        
-        schedulerUtils.runTaskAsynchronously(() -> {
-            String tableName = databaseType.equalsIgnoreCase("mysql") ? 
-                plugin.getConfigManager().getMySQLTable() : "joinmessages";
-                
-            String query = "SELECT uuid, username FROM " + tableName + " ORDER BY username";
-            List<PlayerInfo> players = new ArrayList<>();
+        // 失败时返回空列表而不是null
+        return supplyAsync("get all players", new ArrayList<>(), () -> {
+            // 先写入缓冲区中的修改，使查询结果包含这些修改
+            writeBuffer.flush();
             
-            try (PreparedStatement statement = connection.prepareStatement(query)) {
-                ResultSet resultSet = statement.executeQuery();
-                
-                while (resultSet.next()) {
-                    String uuid = resultSet.getString("uuid");
-                    String username = resultSet.getString("username");
-                    players.add(new PlayerInfo(uuid, username));
-                }
-                
-                future.complete(players);
-            } catch (SQLException e) {
-                plugin.getLogger().severe("Failed to get all players: " + e.getMessage());
-                future.complete(players); // 返回空列表而不是null
+            try (Connection connection = connectionPool.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(queries.selectAllPlayers)) {
+                return queryStats.execute("get all players", queries.selectAllPlayers, () -> {
+                    List<PlayerInfo> players = new ArrayList<>();
+                    
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            String uuid = resultSet.getString("uuid");
+                            String username = resultSet.getString("username");
+                            players.add(new PlayerInfo(uuid, username));
+                        }
+                    }
+                    
+                    return players;
+                });
             }
         });
-        
-        return future;
     }
     
     /**
@@ -654,27 +492,143 @@ public class DatabaseManager {
      * @return CompletableFuture<Boolean> 删除成功返回true，否则返回false
      */
     public CompletableFuture<Boolean> deletePlayerByUuid(String uuid) {
-        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        recordCache.update(uuid, record -> PlayerMessageRecord.empty(uuid));
         
-        schedulerUtils.runTaskAsynchronously(() -> {
-            String tableName = databaseType.equalsIgnoreCase("mysql") ? 
-                plugin.getConfigManager().getMySQLTable() : "joinmessages";
-                
-            String query = "DELETE FROM " + tableName + " WHERE uuid = ?";
+        return supplyAsync("delete player by UUID", uuid, false, () -> {
+            // 先写入缓冲区中的修改，使查询结果包含这些修改
+            writeBuffer.flush();
             
-            try (PreparedStatement statement = connection.prepareStatement(query)) {
+            try (Connection connection = connectionPool.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(queries.deleteByUuid)) {
                 statement.setString(1, uuid);
-                int rowsAffected = statement.executeUpdate();
-                future.complete(rowsAffected > 0);
-            } catch (SQLException e) {
-                plugin.getLogger().severe("Failed to delete player by UUID: " + e.getMessage());
-                future.complete(false);
+                return queryStats.execute("delete player by UUID", queries.deleteByUuid, () -> statement.executeUpdate() > 0);
             }
         });
+    }
+    
+    /**
+     * 获取当前数据库的SQL方言
+     * @return SQL方言
+     */
+    public SqlDialect getDialect() {
+        return SqlDialect.fromDatabaseType(databaseType);
+    }
+    
+    private String getTableName() {
+        return databaseType.equalsIgnoreCase("mysql") ? 
+            plugin.getConfigManager().getMySQLTable() : "joinmessages";
+    }
+    
+    /**
+     * 在数据库执行器中执行写操作，失败时记录日志
+     * @param operation 操作名称，用于日志
+     * @param task 数据库操作
+     */
+    void runAsync(String operation, SqlTask task) {
+        long submitted = System.nanoTime();
+        try {
+            databaseExecutor.execute(() -> {
+                LatencyStats stats = plugin.getLatencyStats();
+                DatabaseOperationEvent event = new DatabaseOperationEvent();
+                event.begin();
+                long started = System.nanoTime();
+                stats.record(LatencyStats.Stage.DB_QUEUE, started - submitted);
+                queryStats.beginTask(started - submitted);
+                try {
+                    task.run();
+                } catch (SQLException | RuntimeException e) {
+                    // 运行时异常同样只记录日志，不能终止执行器线程或跳过统计
+                    plugin.getLogger().severe("Failed to " + operation + ": " + e.getMessage());
+                } finally {
+                    queryStats.endTask();
+                    stats.recordSince(LatencyStats.Stage.DB_QUERY, started);
+                    commitEvent(event, operation, null, -1, started - submitted);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            plugin.getLogger().warning("Failed to " + operation + ": " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 在数据库执行器中执行查询，连接归还后才完成Future
+     * @param operation 操作名称，用于日志
+     * @param fallback 查询失败或被拒绝时返回的值
+     * @param query 数据库查询
+     * @return 查询结果
+     */
+    <T> CompletableFuture<T> supplyAsync(String operation, T fallback, SqlQuery<T> query) {
+        return supplyAsync(operation, null, fallback, query);
+    }
+    
+    /**
+     * 在数据库执行器中执行针对单个玩家的查询，连接归还后才完成Future
+     * @param operation 操作名称，用于日志
+     * @param uuid 查询的玩家UUID，用于JFR事件，可以为null
+     * @param fallback 查询失败或被拒绝时返回的值
+     * @param query 数据库查询
+     * @return 查询结果
+     */
+    <T> CompletableFuture<T> supplyAsync(String operation, String uuid, T fallback, SqlQuery<T> query) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        long submitted = System.nanoTime();
+        
+        try {
+            databaseExecutor.execute(() -> {
+                LatencyStats stats = plugin.getLatencyStats();
+                DatabaseOperationEvent event = new DatabaseOperationEvent();
+                event.begin();
+                long started = System.nanoTime();
+                stats.record(LatencyStats.Stage.DB_QUEUE, started - submitted);
+                queryStats.beginTask(started - submitted);
+                T result = fallback;
+                try {
+                    result = query.get();
+                } catch (SQLException | RuntimeException e) {
+                    // 运行时异常同样返回fallback，否则Future永远不会完成
+                    plugin.getLogger().severe("Failed to " + operation + ": " + e.getMessage());
+                } finally {
+                    queryStats.endTask();
+                    stats.recordSince(LatencyStats.Stage.DB_QUERY, started);
+                    commitEvent(event, operation, uuid, DatabaseOperationEvent.rowsOf(result), started - submitted);
+                    future.complete(result);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            plugin.getLogger().warning("Failed to " + operation + ": " + e.getMessage());
+            future.complete(fallback);
+        }
         
         return future;
     }
     
+    /**
+     * 结束并提交JFR事件，只有事件在JFR记录中启用时才设置字段
+     * @param uuid 玩家UUID，不是针对单个玩家的操作时为null
+     * @param rows 读取或写入的行数，未知时为-1
+     * @param queueWait 在执行器队列中等待的时间（纳秒）
+     */
+    private void commitEvent(DatabaseOperationEvent event, String operation, String uuid, int rows, long queueWait) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.setOperation(operation);
+            event.setUuidHash(uuid != null ? uuid.hashCode() : 0);
+            event.setRows(rows);
+            event.setQueueWait(queueWait);
+            event.commit();
+        }
+    }
+    
+    @FunctionalInterface
+    interface SqlTask {
+        void run() throws SQLException;
+    }
+    
+    @FunctionalInterface
+    interface SqlQuery<T> {
+        T get() throws SQLException;
+    }
+    
     /**
      * 玩家信息类，用于存储UUID和用户名
      */
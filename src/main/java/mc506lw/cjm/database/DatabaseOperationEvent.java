@@ -0,0 +1,71 @@
+package mc506lw.cjm.database;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import java.util.Collection;
+
+/**
+ * JFR event for a database task
+ * 数据库操作的JFR事件
+ * 只有在JFR记录中启用该事件时才会提交，未记录时只有创建事件对象和一次isEnabled检查的开销
+ */
+@Name("mc506lw.cjm.DatabaseOperation")
+@Label("Database Operation")
+@Category({"CustomJoinMessage", "Database"})
+@Description("A database task run by CustomJoinMessage")
+@StackTrace(false)
+public class DatabaseOperationEvent extends Event {
+    @Label("Operation")
+    private String operation;
+
+    @Label("UUID Hash")
+    @Description("Hash code of the player's UUID, 0 if the operation is not for a single player")
+    private int uuidHash;
+
+    @Label("Rows")
+    @Description("Rows read or written, -1 if unknown")
+    private int rows;
+
+    @Label("Queue Wait")
+    @Description("Time the task waited in the database executor queue")
+    @Timespan(Timespan.NANOSECONDS)
+    private long queueWait;
+
+    public void setOperation(String operation) {
+        this.operation = operation;
+    }
+
+    public void setUuidHash(int uuidHash) {
+        this.uuidHash = uuidHash;
+    }
+
+    public void setRows(int rows) {
+        this.rows = rows;
+    }
+
+    public void setQueueWait(long queueWait) {
+        this.queueWait = queueWait;
+    }
+
+    /**
+     * 从查询结果推算行数：集合为元素数，布尔值为0或1，null为0，其他对象为1
+     */
+    static int rowsOf(Object result) {
+        if (result == null) {
+            return 0;
+        }
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+        if (result instanceof Boolean) {
+            return (Boolean) result ? 1 : 0;
+        }
+        return 1;
+    }
+}
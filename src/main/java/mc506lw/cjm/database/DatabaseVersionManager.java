@@ -1,12 +1,14 @@
 package mc506lw.cjm.database;
 
 import mc506lw.cjm.CustomJoinMessage;
-import mc506lw.cjm.utils.SchedulerUtils;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Arrays;
 import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 
@@ -17,15 +19,24 @@ import java.util.logging.Level;
 public class DatabaseVersionManager {
     private final CustomJoinMessage plugin;
     private final DatabaseManager databaseManager;
-    private final SchedulerUtils schedulerUtils;
+    private final QueryStats queryStats;
     
     // 当前数据库版本
     private static final int CURRENT_DB_VERSION = 1;
     
+    // 执行时间统计和慢查询日志中使用的操作名称
+    private static final String VERSION_OPERATION = "initialize database version";
+    private static final String MAINTENANCE_OPERATION = "clean up records";
+    private static final String OPTIMIZE_OPERATION = "optimize database";
+    private static final String FORCE_RESET_OPERATION = "force reset player by name";
+    
+    private static final String OPTIMIZE_SQL = "PRAGMA optimize";
+    private static final String CHECKPOINT_SQL = "PRAGMA wal_checkpoint(TRUNCATE)";
+    
     public DatabaseVersionManager(CustomJoinMessage plugin, DatabaseManager databaseManager) {
         this.plugin = plugin;
         this.databaseManager = databaseManager;
-        this.schedulerUtils = plugin.getSchedulerUtils();
+        this.queryStats = databaseManager.getQueryStats();
     }
     
     /**
@@ -33,35 +44,55 @@ public class DatabaseVersionManager {
      * 检查数据库版本并执行必要的升级
      */
     public void initialize() {
-        schedulerUtils.runTaskAsynchronously(() -> {
-            try {
+        databaseManager.runAsync(VERSION_OPERATION, () -> {
+            try (Connection connection = databaseManager.getConnection()) {
                 // 创建版本表（如果不存在）
-                createVersionTable();
+                createVersionTable(connection);
                 
                 // 获取当前数据库版本
-                int currentVersion = getCurrentDatabaseVersion();
+                int currentVersion = getCurrentDatabaseVersion(connection);
                 
                 // 执行版本升级
                 if (currentVersion < CURRENT_DB_VERSION) {
                     plugin.getLogger().info("检测到数据库版本需要升级，当前版本: " + currentVersion + "，目标版本: " + CURRENT_DB_VERSION);
-                    upgradeDatabase(currentVersion, CURRENT_DB_VERSION);
+                    upgradeDatabase(connection, currentVersion, CURRENT_DB_VERSION);
                 } else {
                     plugin.getLogger().info("数据库版本已是最新: " + currentVersion);
                 }
                 
                 // 执行自动维护
-                performMaintenance();
+                performMaintenance(connection);
                 
             } catch (SQLException e) {
                 plugin.getLogger().log(Level.SEVERE, "数据库版本管理初始化失败", e);
             }
         });
+        
+        schedulePeriodicMaintenance();
+    }
+    
+    /**
+     * 定期优化SQLite数据库
+     */
+    private void schedulePeriodicMaintenance() {
+        int intervalMinutes = plugin.getConfigManager().getSQLiteMaintenanceInterval();
+        if (databaseManager.getDialect() != SqlDialect.SQLITE || intervalMinutes <= 0) {
+            return;
+        }
+        
+        long periodTicks = intervalMinutes * 60L * 20L;
+        plugin.getSchedulerUtils().runTaskTimerAsynchronously(() ->
+                databaseManager.runAsync(OPTIMIZE_OPERATION, () -> {
+                    try (Connection connection = databaseManager.getConnection()) {
+                        optimizeSQLite(connection);
+                    }
+                }), periodTicks, periodTicks);
     }
     
     /**
      * 创建版本表
      */
-    private void createVersionTable() throws SQLException {
+    private void createVersionTable(Connection connection) throws SQLException {
         String databaseType = plugin.getConfigManager().getDatabaseType();
         String tableName = databaseType.equalsIgnoreCase("mysql") ? 
             plugin.getConfigManager().getMySQLTable() + "_version" : "joinmessages_version";
@@ -72,77 +103,65 @@ public class DatabaseVersionManager {
                 "upgrade_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
                 ")";
         
-        try (PreparedStatement statement = databaseManager.getConnection().prepareStatement(query)) {
-            statement.execute();
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            queryStats.execute(VERSION_OPERATION, query, statement::execute);
         }
     }
     
     /**
      * 获取当前数据库版本
      */
-    private int getCurrentDatabaseVersion() throws SQLException {
+    private int getCurrentDatabaseVersion(Connection connection) throws SQLException {
         String databaseType = plugin.getConfigManager().getDatabaseType();
         String tableName = databaseType.equalsIgnoreCase("mysql") ? 
             plugin.getConfigManager().getMySQLTable() + "_version" : "joinmessages_version";
             
         String query = "SELECT version FROM " + tableName + " ORDER BY id DESC LIMIT 1";
         
-        try (PreparedStatement statement = databaseManager.getConnection().prepareStatement(query);
-             ResultSet resultSet = statement.executeQuery()) {
-            
-            if (resultSet.next()) {
-                return resultSet.getInt("version");
-            } else {
-                // 如果没有版本记录，假设是版本0（未初始化）
-                return 0;
-            }
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            return queryStats.execute(VERSION_OPERATION, query, () -> {
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    if (resultSet.next()) {
+                        return resultSet.getInt("version");
+                    } else {
+                        // 如果没有版本记录，假设是版本0（未初始化）
+                        return 0;
+                    }
+                }
+            });
         }
     }
     
     /**
      * 更新数据库版本
      */
-    private void updateDatabaseVersion(int newVersion) throws SQLException {
+    private void updateDatabaseVersion(Connection connection, int newVersion) throws SQLException {
         String databaseType = plugin.getConfigManager().getDatabaseType();
         String tableName = databaseType.equalsIgnoreCase("mysql") ? 
             plugin.getConfigManager().getMySQLTable() + "_version" : "joinmessages_version";
             
-        String query = "INSERT INTO " + tableName + " (id, version) VALUES (1, ?)";
-        
-        if (databaseType.equalsIgnoreCase("mysql")) {
-            query = "INSERT INTO " + tableName + " (id, version) VALUES (1, ?) " +
-                    "ON DUPLICATE KEY UPDATE version = VALUES(version), upgrade_date = CURRENT_TIMESTAMP";
-        } else {
-            // 对于SQLite，先尝试更新，如果失败则插入
-            try {
-                String updateQuery = "UPDATE " + tableName + " SET version = ? WHERE id = 1";
-                try (PreparedStatement updateStatement = databaseManager.getConnection().prepareStatement(updateQuery)) {
-                    updateStatement.setInt(1, newVersion);
-                    updateStatement.executeUpdate();
-                }
-                return;
-            } catch (SQLException e) {
-                // 更新失败，执行插入
-            }
-        }
+        // 单条语句插入或更新版本记录，同时刷新升级时间
+        String query = databaseManager.getDialect().upsert(tableName, "id", Arrays.asList("version", "upgrade_date"));
         
-        try (PreparedStatement statement = databaseManager.getConnection().prepareStatement(query)) {
-            statement.setInt(1, newVersion);
-            statement.executeUpdate();
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setInt(1, 1);
+            statement.setInt(2, newVersion);
+            statement.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+            queryStats.execute(VERSION_OPERATION, query, statement::executeUpdate);
         }
     }
     
     /**
      * 升级数据库
      */
-    private void upgradeDatabase(int fromVersion, int toVersion) throws SQLException {
+    private void upgradeDatabase(Connection connection, int fromVersion, int toVersion) throws SQLException {
         for (int version = fromVersion + 1; version <= toVersion; version++) {
             plugin.getLogger().info("正在升级数据库到版本: " + version);
             
             switch (version) {
                 case 1:
                     // 版本1升级：确保quit_message列存在
-                    upgradeToVersion1();
+                    upgradeToVersion1(connection);
                     break;
                 default:
                     plugin.getLogger().warning("未知的数据库版本: " + version);
@@ -150,7 +169,7 @@ public class DatabaseVersionManager {
             }
             
             // 更新版本记录
-            updateDatabaseVersion(version);
+            updateDatabaseVersion(connection, version);
             plugin.getLogger().info("数据库升级到版本 " + version + " 完成");
         }
     }
@@ -159,28 +178,20 @@ public class DatabaseVersionManager {
      * 升级到版本1
      * 确保quit_message列存在
      */
-    private void upgradeToVersion1() throws SQLException {
+    private void upgradeToVersion1(Connection connection) throws SQLException {
         String databaseType = plugin.getConfigManager().getDatabaseType();
         String tableName = databaseType.equalsIgnoreCase("mysql") ? 
             plugin.getConfigManager().getMySQLTable() : "joinmessages";
             
         // 检查quit_message列是否存在
-        try (ResultSet rs = databaseManager.getConnection().getMetaData().getColumns(null, null, tableName, "quit_message")) {
+        try (ResultSet rs = connection.getMetaData().getColumns(null, null, tableName, "quit_message")) {
             if (!rs.next()) {
                 // 列不存在，添加它
-                try (PreparedStatement statement = databaseManager.getConnection().prepareStatement(
-                        "ALTER TABLE " + tableName + " ADD COLUMN quit_message TEXT")) {
-                    statement.execute();
-                }
-                
-                try (PreparedStatement statement = databaseManager.getConnection().prepareStatement(
-                        "ALTER TABLE " + tableName + " ADD COLUMN quit_prefix TEXT")) {
-                    statement.execute();
-                }
-                
-                try (PreparedStatement statement = databaseManager.getConnection().prepareStatement(
-                        "ALTER TABLE " + tableName + " ADD COLUMN quit_suffix TEXT")) {
-                    statement.execute();
+                for (String column : Arrays.asList("quit_message", "quit_prefix", "quit_suffix")) {
+                    String query = "ALTER TABLE " + tableName + " ADD COLUMN " + column + " TEXT";
+                    try (PreparedStatement statement = connection.prepareStatement(query)) {
+                        queryStats.execute(VERSION_OPERATION, query, statement::execute);
+                    }
                 }
                 
                 plugin.getLogger().info("已添加退出消息相关列到数据库表");
@@ -191,13 +202,17 @@ public class DatabaseVersionManager {
     /**
      * 执行数据库维护
      */
-    private void performMaintenance() {
+    private void performMaintenance(Connection connection) {
         try {
             // 检查是否有孤立记录（没有有效UUID的记录）
-            cleanupOrphanedRecords();
+            cleanupOrphanedRecords(connection);
             
             // 检查是否有重复记录
-            cleanupDuplicateRecords();
+            cleanupDuplicateRecords(connection);
+            
+            if (databaseManager.getDialect() == SqlDialect.SQLITE) {
+                optimizeSQLite(connection);
+            }
             
             plugin.getLogger().info("数据库维护完成");
         } catch (SQLException e) {
@@ -205,18 +220,37 @@ public class DatabaseVersionManager {
         }
     }
     
+    /**
+     * 更新SQLite查询优化器的统计信息，并把WAL中的内容写回数据库文件
+     */
+    private void optimizeSQLite(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            queryStats.execute(OPTIMIZE_OPERATION, OPTIMIZE_SQL, () -> statement.execute(OPTIMIZE_SQL));
+            
+            // 非WAL模式下检查点不会执行任何操作；TRUNCATE会在检查点完成后清空WAL文件，避免其持续增长
+            boolean blocked = queryStats.execute(OPTIMIZE_OPERATION, CHECKPOINT_SQL, () -> {
+                try (ResultSet resultSet = statement.executeQuery(CHECKPOINT_SQL)) {
+                    return resultSet.next() && resultSet.getInt(1) != 0;
+                }
+            });
+            if (blocked) {
+                plugin.getLogger().fine("SQLite WAL checkpoint was blocked by an active reader or writer");
+            }
+        }
+    }
+    
     /**
      * 清理孤立记录
      */
-    private void cleanupOrphanedRecords() throws SQLException {
+    private void cleanupOrphanedRecords(Connection connection) throws SQLException {
         String databaseType = plugin.getConfigManager().getDatabaseType();
         String tableName = databaseType.equalsIgnoreCase("mysql") ? 
             plugin.getConfigManager().getMySQLTable() : "joinmessages";
             
         String query = "DELETE FROM " + tableName + " WHERE uuid IS NULL OR uuid = ''";
         
-        try (PreparedStatement statement = databaseManager.getConnection().prepareStatement(query)) {
-            int deletedRows = statement.executeUpdate();
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            int deletedRows = queryStats.execute(MAINTENANCE_OPERATION, query, statement::executeUpdate);
             if (deletedRows > 0) {
                 plugin.getLogger().info("清理了 " + deletedRows + " 条孤立记录");
             }
@@ -226,7 +260,7 @@ public class DatabaseVersionManager {
     /**
      * 清理重复记录
      */
-    private void cleanupDuplicateRecords() throws SQLException {
+    private void cleanupDuplicateRecords(Connection connection) throws SQLException {
         String databaseType = plugin.getConfigManager().getDatabaseType();
         String tableName = databaseType.equalsIgnoreCase("mysql") ? 
             plugin.getConfigManager().getMySQLTable() : "joinmessages";
@@ -235,8 +269,8 @@ public class DatabaseVersionManager {
         String findDuplicatesQuery = "SELECT uuid, COUNT(*) as count FROM " + tableName + 
                 " GROUP BY uuid HAVING count > 1";
         
-        try (PreparedStatement statement = databaseManager.getConnection().prepareStatement(findDuplicatesQuery);
-             ResultSet resultSet = statement.executeQuery()) {
+        try (PreparedStatement statement = connection.prepareStatement(findDuplicatesQuery);
+             ResultSet resultSet = queryStats.execute(MAINTENANCE_OPERATION, findDuplicatesQuery, statement::executeQuery)) {
             
             int duplicatesCount = 0;
             while (resultSet.next()) {
@@ -254,10 +288,11 @@ public class DatabaseVersionManager {
                             "SELECT rowid FROM " + tableName + " WHERE uuid = ? ORDER BY rowid DESC LIMIT 1)";
                 }
                 
-                try (PreparedStatement deleteStatement = databaseManager.getConnection().prepareStatement(deleteDuplicatesQuery)) {
+                try (PreparedStatement deleteStatement = connection.prepareStatement(deleteDuplicatesQuery)) {
                     deleteStatement.setString(1, uuid);
                     deleteStatement.setString(2, uuid);
-                    int deletedRows = deleteStatement.executeUpdate();
+                    int deletedRows = queryStats.execute(MAINTENANCE_OPERATION, deleteDuplicatesQuery,
+                            deleteStatement::executeUpdate);
                     duplicatesCount += deletedRows;
                 }
             }
@@ -274,42 +309,14 @@ public class DatabaseVersionManager {
      * @return CompletableFuture<Boolean> 如果重置成功返回true，否则返回false
      */
     public CompletableFuture<Boolean> resetPlayerData(String playerName) {
-        CompletableFuture<Boolean> future = new CompletableFuture<>();
-        
-        schedulerUtils.runTaskAsynchronously(() -> {
-            try {
-                // 通过玩家名获取UUID
-                databaseManager.getPlayerUuid(playerName).thenAccept(uuid -> {
-                    if (uuid == null) {
-                        future.complete(false);
-                        return;
-                    }
-                    
-                    // 重置玩家数据
-                    try {
-                        String databaseType = plugin.getConfigManager().getDatabaseType();
-                        String tableName = databaseType.equalsIgnoreCase("mysql") ? 
-                            plugin.getConfigManager().getMySQLTable() : "joinmessages";
-                            
-                        String query = "DELETE FROM " + tableName + " WHERE uuid = ?";
-                        
-                        try (PreparedStatement statement = databaseManager.getConnection().prepareStatement(query)) {
-                            statement.setString(1, uuid);
-                            int deletedRows = statement.executeUpdate();
-                            future.complete(deletedRows > 0);
-                        }
-                    } catch (SQLException e) {
-                        plugin.getLogger().log(Level.SEVERE, "重置玩家数据失败", e);
-                        future.complete(false);
-                    }
-                });
-            } catch (Exception e) {
-                plugin.getLogger().log(Level.SEVERE, "重置玩家数据过程中出现异常", e);
-                future.complete(false);
+        // 通过玩家名获取UUID，再在新的数据库任务中删除，避免在持有连接的线程中再次借出连接
+        return databaseManager.getPlayerUuid(playerName).thenCompose(uuid -> {
+            if (uuid == null) {
+                return CompletableFuture.completedFuture(false);
             }
+            
+            return databaseManager.deletePlayerByUuid(uuid);
         });
-        
-        return future;
     }
     
     /**
@@ -326,9 +333,12 @@ public class DatabaseVersionManager {
             // 尝试通过username字段删除记录
             String query = "DELETE FROM " + tableName + " WHERE username = ?";
             
-            try (PreparedStatement statement = databaseManager.getConnection().prepareStatement(query)) {
+            try (Connection connection = databaseManager.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(query)) {
                 statement.setString(1, playerName);
-                int deletedRows = statement.executeUpdate();
+                int deletedRows = queryStats.execute(FORCE_RESET_OPERATION, query, statement::executeUpdate);
+                databaseManager.getRecordCache().removeByUsername(playerName);
+                databaseManager.getWriteBuffer().discardByUsername(playerName);
                 plugin.getLogger().info("强制删除了玩家 " + playerName + " 的 " + deletedRows + " 条记录");
                 return deletedRows > 0;
             }
@@ -0,0 +1,90 @@
+package mc506lw.cjm.database;
+
+/**
+ * 玩家消息记录，对应数据库中的一整行数据
+ * 不可变对象，可以在线程之间安全共享
+ */
+public final class PlayerMessageRecord {
+    private final String uuid;
+    private final String username;
+    private final String joinMessage;
+    private final String joinPrefix;
+    private final String joinSuffix;
+    private final String quitMessage;
+    private final String quitPrefix;
+    private final String quitSuffix;
+
+    public PlayerMessageRecord(String uuid, String username,
+                               String joinMessage, String joinPrefix, String joinSuffix,
+                               String quitMessage, String quitPrefix, String quitSuffix) {
+        this.uuid = uuid;
+        this.username = username;
+        this.joinMessage = joinMessage;
+        this.joinPrefix = joinPrefix;
+        this.joinSuffix = joinSuffix;
+        this.quitMessage = quitMessage;
+        this.quitPrefix = quitPrefix;
+        this.quitSuffix = quitSuffix;
+    }
+
+    /**
+     * 创建一个没有任何自定义消息的空记录
+     * @param uuid 玩家的UUID
+     * @return 空记录
+     */
+    public static PlayerMessageRecord empty(String uuid) {
+        return new PlayerMessageRecord(uuid, null, null, null, null, null, null, null);
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getJoinMessage() {
+        return joinMessage;
+    }
+
+    public String getJoinPrefix() {
+        return joinPrefix;
+    }
+
+    public String getJoinSuffix() {
+        return joinSuffix;
+    }
+
+    public String getQuitMessage() {
+        return quitMessage;
+    }
+
+    public String getQuitPrefix() {
+        return quitPrefix;
+    }
+
+    public String getQuitSuffix() {
+        return quitSuffix;
+    }
+
+    public PlayerMessageRecord withJoinMessage(String username, String message) {
+        return new PlayerMessageRecord(uuid, username, message, joinPrefix, joinSuffix, quitMessage, quitPrefix, quitSuffix);
+    }
+
+    public PlayerMessageRecord withQuitMessage(String username, String message) {
+        return new PlayerMessageRecord(uuid, username, joinMessage, joinPrefix, joinSuffix, message, quitPrefix, quitSuffix);
+    }
+
+    public PlayerMessageRecord withQuitPrefix(String username, String prefix) {
+        return new PlayerMessageRecord(uuid, username, joinMessage, joinPrefix, joinSuffix, quitMessage, prefix, quitSuffix);
+    }
+
+    public PlayerMessageRecord withQuitSuffix(String username, String suffix) {
+        return new PlayerMessageRecord(uuid, username, joinMessage, joinPrefix, joinSuffix, quitMessage, quitPrefix, suffix);
+    }
+
+    public PlayerMessageRecord withoutQuitMessage() {
+        return new PlayerMessageRecord(uuid, username, joinMessage, joinPrefix, joinSuffix, null, null, null);
+    }
+}
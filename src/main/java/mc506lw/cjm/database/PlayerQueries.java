@@ -0,0 +1,91 @@
+package mc506lw.cjm.database;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 玩家消息表使用的SQL语句
+ * 在数据库初始化时根据表名和方言生成一次，之后每次操作直接复用同一个字符串，
+ * 相同的SQL文本也使连接上的预编译语句缓存可以命中
+ */
+final class PlayerQueries {
+    static final String COLUMN_JOIN_MESSAGE = "message";
+    static final String COLUMN_QUIT_MESSAGE = "quit_message";
+    static final String COLUMN_QUIT_PREFIX = "quit_prefix";
+    static final String COLUMN_QUIT_SUFFIX = "quit_suffix";
+
+    // 可以单独写入的消息列，顺序即为批量写入语句中的参数顺序
+    static final String[] MESSAGE_COLUMNS = {
+            COLUMN_JOIN_MESSAGE, COLUMN_QUIT_MESSAGE, COLUMN_QUIT_PREFIX, COLUMN_QUIT_SUFFIX
+    };
+
+    final String selectRecord;
+    final String selectExists;
+    final String selectUuidByUsername;
+    final String selectAllPlayers;
+    final String deleteByUuid;
+
+    // 按写入列的组合（MESSAGE_COLUMNS的位掩码）预先生成的语句
+    private final String[] upserts = new String[1 << MESSAGE_COLUMNS.length];
+    private final String[] updates = new String[1 << MESSAGE_COLUMNS.length];
+    private final String[] updatesWithUsername = new String[1 << MESSAGE_COLUMNS.length];
+
+    PlayerQueries(String tableName, SqlDialect dialect) {
+        this.selectRecord = "SELECT uuid, username, message, prefix, suffix, quit_message, quit_prefix, quit_suffix FROM " +
+                tableName + " WHERE uuid = ?";
+        this.selectExists = "SELECT uuid FROM " + tableName + " WHERE uuid = ?";
+        this.selectUuidByUsername = "SELECT uuid FROM " + tableName + " WHERE username = ?";
+        this.selectAllPlayers = "SELECT uuid, username FROM " + tableName + " ORDER BY username";
+        this.deleteByUuid = "DELETE FROM " + tableName + " WHERE uuid = ?";
+
+        for (int mask = 1; mask < upserts.length; mask++) {
+            List<String> columns = columnsOf(mask);
+
+            List<String> upsertColumns = new ArrayList<>(columns.size() + 1);
+            upsertColumns.add("username");
+            upsertColumns.addAll(columns);
+            upserts[mask] = dialect.upsert(tableName, "uuid", upsertColumns);
+
+            updates[mask] = update(tableName, columns);
+            updatesWithUsername[mask] = update(tableName, upsertColumns);
+        }
+    }
+
+    private static List<String> columnsOf(int mask) {
+        List<String> columns = new ArrayList<>(MESSAGE_COLUMNS.length);
+        for (int i = 0; i < MESSAGE_COLUMNS.length; i++) {
+            if ((mask & (1 << i)) != 0) {
+                columns.add(MESSAGE_COLUMNS[i]);
+            }
+        }
+        return columns;
+    }
+
+    private static String update(String tableName, List<String> columns) {
+        StringBuilder assignments = new StringBuilder();
+        for (String column : columns) {
+            if (assignments.length() > 0) {
+                assignments.append(", ");
+            }
+            assignments.append(column).append(" = ?");
+        }
+        return "UPDATE " + tableName + " SET " + assignments + " WHERE uuid = ?";
+    }
+
+    /**
+     * 插入或更新语句，参数为uuid、username，然后是掩码中的列
+     * @param columnMask 要写入的列的位掩码
+     */
+    String upsert(int columnMask) {
+        return upserts[columnMask];
+    }
+
+    /**
+     * 只更新已存在记录的语句，参数为（username，）掩码中的列，然后是uuid
+     * @param columnMask 要写入的列的位掩码
+     * @param withUsername 是否同时更新username
+     */
+    String update(int columnMask, boolean withUsername) {
+        return withUsername ? updatesWithUsername[columnMask] : updates[columnMask];
+    }
+}
@@ -0,0 +1,114 @@
+package mc506lw.cjm.database;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+/**
+ * 在线玩家消息记录缓存
+ * 在AsyncPlayerPreLoginEvent中预加载，玩家退出并渲染完退出消息后移除
+ * 预加载后没有被加入事件领取的记录（例如客户端在登录前断开）会在PRELOAD_EXPIRY_NANOS后过期
+ */
+public class PlayerRecordCache {
+    // 预加载的记录等待玩家加入的最长时间
+    private static final long PRELOAD_EXPIRY_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final Map<String, PlayerMessageRecord> records = new ConcurrentHashMap<>();
+    // 已预加载但玩家尚未加入的记录及其预加载时间（System.nanoTime()）
+    private final Map<String, Long> unclaimed = new ConcurrentHashMap<>();
+    // 正在预加载的玩家，值为预加载期间记录是否被修改；与update共用this的锁
+    private final Map<String, Boolean> preloading = new HashMap<>();
+
+    /**
+     * 获取缓存的玩家记录
+     * @param uuid 玩家的UUID
+     * @return 缓存的记录，如果未加载或预加载已过期则返回null
+     */
+    public PlayerMessageRecord get(String uuid) {
+        Long preloadedAt = unclaimed.get(uuid);
+        if (preloadedAt != null && System.nanoTime() - preloadedAt > PRELOAD_EXPIRY_NANOS) {
+            remove(uuid);
+            return null;
+        }
+        return records.get(uuid);
+    }
+
+    /**
+     * 玩家加入时领取预加载的记录，之后记录保留到玩家退出
+     * @param uuid 玩家的UUID
+     * @return 缓存的记录，如果未加载或预加载已过期则返回null
+     */
+    public PlayerMessageRecord claim(String uuid) {
+        PlayerMessageRecord record = get(uuid);
+        unclaimed.remove(uuid);
+        return record;
+    }
+
+    /**
+     * 开始预加载玩家记录，之后的update会标记预加载期间记录已被修改
+     * 同时清除过期的预加载记录
+     * @param uuid 玩家的UUID
+     */
+    synchronized void beginPreload(String uuid) {
+        preloading.put(uuid, false);
+
+        long now = System.nanoTime();
+        unclaimed.forEach((key, preloadedAt) -> {
+            if (now - preloadedAt > PRELOAD_EXPIRY_NANOS) {
+                remove(key);
+            }
+        });
+    }
+
+    /**
+     * 完成预加载并缓存记录
+     * 如果预加载期间记录被修改，读取到的记录可能不包含这次修改，丢弃它，加入时回退到数据库查询
+     * @param uuid 玩家的UUID
+     * @param record 读取到的记录，失败时为null
+     * @return 如果记录被缓存返回true
+     */
+    synchronized boolean completePreload(String uuid, PlayerMessageRecord record) {
+        Boolean modified = preloading.remove(uuid);
+        if (record == null || modified == null || modified) {
+            return false;
+        }
+        records.put(uuid, record);
+        unclaimed.put(uuid, System.nanoTime());
+        return true;
+    }
+
+    public void remove(String uuid) {
+        records.remove(uuid);
+        unclaimed.remove(uuid);
+    }
+
+    /**
+     * 更新已缓存的玩家记录，未缓存的玩家不会被加入缓存
+     * 调用前必须已把修改加入写后缓冲区，这样在此之后开始的预加载一定能读到这次修改
+     * @param uuid 玩家的UUID
+     * @param updater 记录更新函数
+     */
+    public synchronized void update(String uuid, UnaryOperator<PlayerMessageRecord> updater) {
+        preloading.computeIfPresent(uuid, (key, modified) -> true);
+        records.computeIfPresent(uuid, (key, record) -> updater.apply(record));
+    }
+
+    /**
+     * 移除指定用户名的缓存记录，之后的读取会回退到数据库
+     * @param username 玩家名
+     */
+    public void removeByUsername(String username) {
+        records.values().removeIf(record -> username.equalsIgnoreCase(record.getUsername()));
+    }
+
+    public void clear() {
+        records.clear();
+        unclaimed.clear();
+    }
+
+    public int size() {
+        return records.size();
+    }
+}
@@ -0,0 +1,185 @@
+package mc506lw.cjm.database;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+
+/**
+ * SQL语句的执行时间统计和慢查询日志
+ * 按操作名称统计语句的执行次数、耗时、失败次数和慢查询次数
+ * 执行时间超过阈值的语句会连同SQL、所属任务在执行器队列中的等待时间、借出连接的等待时间和执行时间一起记录到日志
+ */
+public class QueryStats {
+    private final Logger logger;
+    // 每次执行时读取，重载配置后立即生效
+    private final LongSupplier slowThresholdMillis;
+    private final Map<String, Counters> operations = new ConcurrentHashMap<>();
+    // 当前线程正在运行的数据库任务在执行器队列中等待的时间（纳秒），不在执行器中运行时为null
+    private final ThreadLocal<Long> queueWait = new ThreadLocal<>();
+    // 当前线程最近一次从连接池借出连接所用的时间（纳秒），尚未借出连接时为null
+    private final ThreadLocal<Long> connectionWait = new ThreadLocal<>();
+
+    /**
+     * @param logger 慢查询日志
+     * @param slowThresholdMillis 慢查询阈值（毫秒），0或负数表示不记录慢查询日志
+     */
+    QueryStats(Logger logger, LongSupplier slowThresholdMillis) {
+        this.logger = logger;
+        this.slowThresholdMillis = slowThresholdMillis;
+    }
+
+    /**
+     * 标记当前线程开始运行一个数据库任务，之后执行的语句在慢查询日志中带上该任务的排队时间
+     * @param queueWaitNanos 任务在执行器队列中等待的时间（纳秒）
+     */
+    void beginTask(long queueWaitNanos) {
+        queueWait.set(queueWaitNanos);
+    }
+
+    /**
+     * 标记当前线程的数据库任务已结束
+     */
+    void endTask() {
+        queueWait.remove();
+        connectionWait.remove();
+    }
+
+    /**
+     * 记录当前线程从连接池借出连接所用的时间，之后执行的语句在慢查询日志中带上该时间
+     * 连接池性能下降（例如MySQL响应变慢、连接耗尽）时主要表现为这段时间变长，而不是语句执行变慢
+     * @param nanos 等待空闲连接、校验或创建连接的总时间（纳秒）
+     */
+    void recordConnectionWait(long nanos) {
+        connectionWait.set(nanos);
+    }
+
+    /**
+     * 执行一条语句并记录执行时间，失败时同样计入统计后重新抛出异常
+     * @param operation 所属的操作名称，用于分组统计
+     * @param sql 执行的SQL，用于慢查询日志
+     * @param statement 执行语句并读取结果
+     * @return 语句的结果
+     * @throws SQLException 如果语句执行失败
+     */
+    <T> T execute(String operation, String sql, DatabaseManager.SqlQuery<T> statement) throws SQLException {
+        long started = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = statement.get();
+            failed = false;
+            return result;
+        } finally {
+            record(operation, sql, System.nanoTime() - started, failed);
+        }
+    }
+
+    private void record(String operation, String sql, long nanos, boolean failed) {
+        Counters counters = operations.computeIfAbsent(operation, name -> new Counters());
+        counters.count.increment();
+        counters.totalNanos.add(nanos);
+        if (nanos > counters.maxNanos.get()) {
+            counters.maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+        if (failed) {
+            counters.errors.increment();
+        }
+
+        long threshold = slowThresholdMillis.getAsLong();
+        if (threshold <= 0 || nanos < threshold * 1_000_000L) {
+            return;
+        }
+        counters.slow.increment();
+
+        Long queued = queueWait.get();
+        Long borrowed = connectionWait.get();
+        logger.warning(String.format(Locale.ROOT, "Slow database query (%s%s): %.1fms executing, %s, %s: %s",
+                operation, failed ? ", failed" : "", nanos / 1_000_000.0,
+                queued != null ? String.format(Locale.ROOT, "%.1fms queued", queued / 1_000_000.0) : "not queued",
+                borrowed != null
+                        ? String.format(Locale.ROOT, "%.1fms waiting for a connection", borrowed / 1_000_000.0)
+                        : "no pooled connection",
+                sql));
+    }
+
+    /**
+     * 获取每个操作的统计，按总耗时从高到低排列
+     * @return 统计快照
+     */
+    public List<OperationSnapshot> snapshot() {
+        List<OperationSnapshot> snapshots = new ArrayList<>(operations.size());
+        operations.forEach((operation, counters) -> snapshots.add(new OperationSnapshot(operation, counters)));
+        snapshots.sort(Comparator.comparingLong((OperationSnapshot snapshot) -> snapshot.totalNanos).reversed());
+        return snapshots;
+    }
+
+    /**
+     * 清空所有统计
+     */
+    public void reset() {
+        operations.clear();
+    }
+
+    private static final class Counters {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder slow = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+    }
+
+    /**
+     * 一个操作在某一时刻的统计
+     */
+    public static final class OperationSnapshot {
+        private final String operation;
+        private final long count;
+        private final long errors;
+        private final long slow;
+        private final long totalNanos;
+        private final long maxNanos;
+
+        private OperationSnapshot(String operation, Counters counters) {
+            this.operation = operation;
+            this.count = counters.count.sum();
+            this.errors = counters.errors.sum();
+            this.slow = counters.slow.sum();
+            this.totalNanos = counters.totalNanos.sum();
+            this.maxNanos = counters.maxNanos.get();
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        /**
+         * 执行的语句数
+         */
+        public long getCount() {
+            return count;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public long getSlowCount() {
+            return slow;
+        }
+
+        public long getMeanMicros() {
+            return count == 0 ? 0 : totalNanos / count / 1000L;
+        }
+
+        public long getMaxMicros() {
+            return maxNanos / 1000L;
+        }
+    }
+}
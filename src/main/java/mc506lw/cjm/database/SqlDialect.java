@@ -0,0 +1,69 @@
+package mc506lw.cjm.database;
+
+import java.util.Collection;
+
+/**
+ * 不同数据库之间有差异的SQL语法
+ */
+public enum SqlDialect {
+    SQLITE {
+        @Override
+        protected String conflictClause(String keyColumn) {
+            return " ON CONFLICT(" + keyColumn + ") DO UPDATE SET ";
+        }
+
+        @Override
+        protected String assignment(String column) {
+            return column + " = excluded." + column;
+        }
+    },
+    MYSQL {
+        @Override
+        protected String conflictClause(String keyColumn) {
+            return " ON DUPLICATE KEY UPDATE ";
+        }
+
+        @Override
+        protected String assignment(String column) {
+            return column + " = VALUES(" + column + ")";
+        }
+    };
+
+    /**
+     * 根据配置中的数据库类型获取方言，未知类型按SQLite处理
+     * @param databaseType 数据库类型
+     * @return 对应的方言
+     */
+    public static SqlDialect fromDatabaseType(String databaseType) {
+        return "mysql".equalsIgnoreCase(databaseType) ? MYSQL : SQLITE;
+    }
+
+    /**
+     * 生成单条原子执行的插入或更新语句，主键已存在时只更新给定的列，保留其他列
+     * 参数顺序为主键，然后按columns的顺序排列
+     * @param tableName 表名
+     * @param keyColumn 主键列
+     * @param columns 要写入的列（不包括主键）
+     * @return SQL语句
+     */
+    public String upsert(String tableName, String keyColumn, Collection<String> columns) {
+        StringBuilder names = new StringBuilder(keyColumn);
+        StringBuilder values = new StringBuilder("?");
+        StringBuilder assignments = new StringBuilder();
+        for (String column : columns) {
+            names.append(", ").append(column);
+            values.append(", ?");
+            if (assignments.length() > 0) {
+                assignments.append(", ");
+            }
+            assignments.append(assignment(column));
+        }
+
+        return "INSERT INTO " + tableName + " (" + names + ") VALUES (" + values + ")" +
+                conflictClause(keyColumn) + assignments;
+    }
+
+    protected abstract String conflictClause(String keyColumn);
+
+    protected abstract String assignment(String column);
+}
@@ -0,0 +1,445 @@
+package mc506lw.cjm.database;
+
+import mc506lw.cjm.utils.LatencyHistogram;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/**
+ * 写后缓冲区
+ * 合并同一玩家的多次写入，定时或达到数量阈值时在一个事务中批量写入数据库
+ * 读取时可以叠加尚未写入的修改，保证读到自己的写入
+ */
+public class WriteBehindBuffer {
+    private static final String FLUSH_OPERATION = "flush pending writes";
+
+    private final Logger logger;
+    private final ConnectionPool connectionPool;
+    private final PlayerQueries queries;
+    private final QueryStats queryStats;
+    private final int batchSize;
+
+    // 等待写入的修改，每个UUID只保留一条合并后的记录
+    private final Map<String, PendingWrite> pending = new ConcurrentHashMap<>();
+    // 正在写入数据库的修改，写入完成前读取仍需叠加这些修改
+    private volatile Map<String, PendingWrite> inFlight = Collections.emptyMap();
+
+    // 保证读取快照时不会看到一条修改既不在pending也不在inFlight中的中间状态
+    private final Object stateLock = new Object();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final ScheduledExecutorService flusher;
+    private final LongAdder coalescedWrites = new LongAdder();
+    private final LongAdder flushedWrites = new LongAdder();
+    private final LongAdder flushCount = new LongAdder();
+    // 每次成功写入一批修改所用的时间，包括借出连接、执行批量语句和提交事务
+    private final LatencyHistogram flushLatency = new LatencyHistogram();
+
+    WriteBehindBuffer(Logger logger, ConnectionPool connectionPool, PlayerQueries queries, QueryStats queryStats,
+                             long flushIntervalMillis, int batchSize) {
+        this.logger = logger;
+        this.connectionPool = connectionPool;
+        this.queries = queries;
+        this.queryStats = queryStats;
+        this.batchSize = Math.max(1, batchSize);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "CustomJoinMessage-WriteBehind");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long interval = Math.max(50, flushIntervalMillis);
+        flusher.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 设置玩家记录中的一列，记录不存在时插入
+     */
+    public void setColumn(String uuid, String username, String column, String value) {
+        Map<String, String> columns = new HashMap<>();
+        columns.put(column, value);
+        enqueue(uuid, new PendingWrite(username, false, true, columns));
+    }
+
+    /**
+     * 清除玩家的退出消息，记录不存在时不插入
+     */
+    public void clearQuitMessage(String uuid) {
+        Map<String, String> columns = new HashMap<>();
+        columns.put(PlayerQueries.COLUMN_QUIT_MESSAGE, null);
+        columns.put(PlayerQueries.COLUMN_QUIT_PREFIX, null);
+        columns.put(PlayerQueries.COLUMN_QUIT_SUFFIX, null);
+        enqueue(uuid, new PendingWrite(null, false, false, columns));
+    }
+
+    /**
+     * 删除玩家的整条记录，之前尚未写入的修改会被丢弃
+     */
+    public void deleteRow(String uuid) {
+        enqueue(uuid, new PendingWrite(null, true, false, Collections.emptyMap()));
+    }
+
+    private void enqueue(String uuid, PendingWrite write) {
+        pending.merge(uuid, write, (previous, next) -> {
+            coalescedWrites.increment();
+            return previous.then(next);
+        });
+
+        // 达到阈值时立即安排一次写入，而不是等待下一次定时写入
+        if (pending.size() >= batchSize && flushScheduled.compareAndSet(false, true)) {
+            flusher.execute(() -> {
+                flushScheduled.set(false);
+                flushQuietly();
+            });
+        }
+    }
+
+    /**
+     * 读取玩家记录，并叠加尚未写入数据库的修改
+     * @param uuid 玩家的UUID
+     * @param loader 从数据库读取记录
+     * @return 叠加修改后的记录，不存在则返回null
+     */
+    PlayerMessageRecord read(String uuid, DatabaseManager.SqlQuery<PlayerMessageRecord> loader) throws SQLException {
+        // 读取数据库前后各取一次快照：读取期间完成写入的修改一定在第一次快照中，
+        // 读取期间新增的修改一定在第二次快照中，按顺序叠加两次即可（同一修改叠加两次结果不变）
+        List<PendingWrite> before = snapshot(uuid);
+        PlayerMessageRecord record = loader.get();
+        List<PendingWrite> after = snapshot(uuid);
+
+        for (PendingWrite write : before) {
+            record = write.applyTo(uuid, record);
+        }
+        for (PendingWrite write : after) {
+            record = write.applyTo(uuid, record);
+        }
+        return record;
+    }
+
+    private List<PendingWrite> snapshot(String uuid) {
+        List<PendingWrite> writes = new ArrayList<>(2);
+        synchronized (stateLock) {
+            PendingWrite flushing = inFlight.get(uuid);
+            if (flushing != null) {
+                writes.add(flushing);
+            }
+            PendingWrite queued = pending.get(uuid);
+            if (queued != null) {
+                writes.add(queued);
+            }
+        }
+        return writes;
+    }
+
+    /**
+     * 立即把所有等待中的修改写入数据库
+     * 如果另一个线程正在写入，会等待其完成后再写入剩余的修改
+     * @throws SQLException 如果写入失败，未写入的修改会保留在缓冲区中等待重试
+     */
+    public void flush() throws SQLException {
+        flushLock.lock();
+        try {
+            if (pending.isEmpty()) {
+                return;
+            }
+
+            Map<String, PendingWrite> batch;
+            synchronized (stateLock) {
+                batch = new LinkedHashMap<>(pending);
+                inFlight = batch;
+                // 只移除未被再次修改的记录，复制后合并进来的修改会在下一次写入
+                batch.forEach(pending::remove);
+            }
+
+            DatabaseOperationEvent event = new DatabaseOperationEvent();
+            event.begin();
+            long started = System.nanoTime();
+            try {
+                writeBatch(batch);
+                flushLatency.record(System.nanoTime() - started);
+                flushedWrites.add(batch.size());
+                flushCount.increment();
+                event.end();
+                if (event.shouldCommit()) {
+                    event.setOperation(FLUSH_OPERATION);
+                    event.setRows(batch.size());
+                    event.commit();
+                }
+            } catch (SQLException e) {
+                // 放回缓冲区，之后的新修改覆盖在失败的修改之上
+                batch.forEach((uuid, write) -> pending.merge(uuid, write, (newer, failed) -> failed.then(newer)));
+                throw e;
+            } finally {
+                inFlight = Collections.emptyMap();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (SQLException e) {
+            logger.severe("Failed to flush pending database writes: " + e.getMessage());
+        } catch (RuntimeException e) {
+            logger.severe("Failed to flush pending database writes: " + e);
+        }
+    }
+
+    private void writeBatch(Map<String, PendingWrite> batch) throws SQLException {
+        try (Connection connection = connectionPool.getConnection()) {
+            connection.setAutoCommit(false);
+
+            // 同一SQL的语句复用同一个PreparedStatement；删除必须先于其他语句执行
+            Map<String, PreparedStatement> deletes = new LinkedHashMap<>();
+            Map<String, PreparedStatement> upserts = new LinkedHashMap<>();
+            Map<String, PreparedStatement> updates = new LinkedHashMap<>();
+
+            try {
+                for (Map.Entry<String, PendingWrite> entry : batch.entrySet()) {
+                    addToBatch(connection, entry.getKey(), entry.getValue(), deletes, upserts, updates);
+                }
+
+                executeBatches(deletes);
+                executeBatches(upserts);
+                executeBatches(updates);
+                queryStats.execute(FLUSH_OPERATION, "COMMIT", () -> {
+                    connection.commit();
+                    return null;
+                });
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                closeStatements(deletes);
+                closeStatements(upserts);
+                closeStatements(updates);
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    private void addToBatch(Connection connection, String uuid, PendingWrite write,
+                            Map<String, PreparedStatement> deletes,
+                            Map<String, PreparedStatement> upserts,
+                            Map<String, PreparedStatement> updates) throws SQLException {
+        if (write.delete) {
+            PreparedStatement statement = prepare(connection, deletes, queries.deleteByUuid);
+            statement.setString(1, uuid);
+            statement.addBatch();
+        }
+
+        int columnMask = write.columnMask();
+        if (columnMask == 0) {
+            return;
+        }
+
+        if (write.insert) {
+            // 单条原子语句插入或更新，记录已存在时保留未修改的列
+            PreparedStatement statement = prepare(connection, upserts, queries.upsert(columnMask));
+            int index = 1;
+            statement.setString(index++, uuid);
+            statement.setString(index++, write.username);
+            setColumnValues(statement, index, write);
+            statement.addBatch();
+            return;
+        }
+
+        // 只更新已存在的记录，不插入新记录
+        boolean withUsername = write.username != null;
+        PreparedStatement update = prepare(connection, updates, queries.update(columnMask, withUsername));
+        int index = 1;
+        if (withUsername) {
+            update.setString(index++, write.username);
+        }
+        index = setColumnValues(update, index, write);
+        update.setString(index, uuid);
+        update.addBatch();
+    }
+
+    /**
+     * 按MESSAGE_COLUMNS的顺序设置修改的列的值
+     * @return 下一个参数的位置
+     */
+    private int setColumnValues(PreparedStatement statement, int index, PendingWrite write) throws SQLException {
+        for (String column : PlayerQueries.MESSAGE_COLUMNS) {
+            if (write.columns.containsKey(column)) {
+                statement.setString(index++, write.columns.get(column));
+            }
+        }
+        return index;
+    }
+
+    private PreparedStatement prepare(Connection connection, Map<String, PreparedStatement> statements,
+                                      String sql) throws SQLException {
+        PreparedStatement statement = statements.get(sql);
+        if (statement == null) {
+            statement = connection.prepareStatement(sql);
+            statements.put(sql, statement);
+        }
+        return statement;
+    }
+
+    private void executeBatches(Map<String, PreparedStatement> statements) throws SQLException {
+        for (Map.Entry<String, PreparedStatement> entry : statements.entrySet()) {
+            PreparedStatement statement = entry.getValue();
+            queryStats.execute(FLUSH_OPERATION, entry.getKey(), statement::executeBatch);
+        }
+    }
+
+    private void closeStatements(Map<String, PreparedStatement> statements) {
+        for (PreparedStatement statement : statements.values()) {
+            try {
+                statement.close();
+            } catch (SQLException ignored) {
+                // 语句已经不可用，忽略
+            }
+        }
+    }
+
+    /**
+     * 丢弃指定玩家名尚未写入的修改
+     * @param username 玩家名
+     */
+    public void discardByUsername(String username) {
+        pending.values().removeIf(write -> username.equalsIgnoreCase(write.username));
+    }
+
+    /**
+     * 停止定时写入，并把剩余的修改写入数据库
+     */
+    public void close() {
+        flusher.shutdownNow();
+
+        try {
+            flush();
+        } catch (SQLException e) {
+            logger.severe("Failed to flush " + pending.size() + " pending database write(s) on shutdown: " + e.getMessage());
+        }
+    }
+
+    public int getPendingWrites() {
+        return pending.size();
+    }
+
+    public long getCoalescedWrites() {
+        return coalescedWrites.sum();
+    }
+
+    public long getFlushedWrites() {
+        return flushedWrites.sum();
+    }
+
+    public long getFlushCount() {
+        return flushCount.sum();
+    }
+
+    /**
+     * 每次成功写入一批修改所用的时间，设置和删除消息只进入缓冲区，实际的数据库写入延迟记录在这里
+     * @return 写入耗时的直方图
+     */
+    public LatencyHistogram getFlushLatency() {
+        return flushLatency;
+    }
+
+    /**
+     * 一个玩家合并后的待写入修改，不可变
+     */
+    private static final class PendingWrite {
+        private final String username;
+        // 先删除整条记录
+        private final boolean delete;
+        // 记录不存在时插入新记录
+        private final boolean insert;
+        // 要写入的列，值为null表示清空该列
+        private final Map<String, String> columns;
+
+        private PendingWrite(String username, boolean delete, boolean insert, Map<String, String> columns) {
+            this.username = username;
+            this.delete = delete;
+            this.insert = insert;
+            this.columns = columns;
+        }
+
+        private int columnMask() {
+            int mask = 0;
+            for (int i = 0; i < PlayerQueries.MESSAGE_COLUMNS.length; i++) {
+                if (columns.containsKey(PlayerQueries.MESSAGE_COLUMNS[i])) {
+                    mask |= 1 << i;
+                }
+            }
+            return mask;
+        }
+
+        /**
+         * 合并一条更新的修改
+         */
+        private PendingWrite then(PendingWrite next) {
+            if (next.delete) {
+                return next;
+            }
+
+            Map<String, String> merged = new HashMap<>(columns);
+            merged.putAll(next.columns);
+            return new PendingWrite(next.username != null ? next.username : username,
+                    delete, insert || next.insert, merged);
+        }
+
+        /**
+         * 把修改叠加到数据库中读取的记录上
+         */
+        private PlayerMessageRecord applyTo(String uuid, PlayerMessageRecord record) {
+            if (delete) {
+                record = null;
+            }
+
+            if (columns.isEmpty()) {
+                return record;
+            }
+
+            if (record == null) {
+                if (!insert) {
+                    return null;
+                }
+                record = PlayerMessageRecord.empty(uuid);
+            }
+
+            String name = username != null ? username : record.getUsername();
+            for (Map.Entry<String, String> column : columns.entrySet()) {
+                switch (column.getKey()) {
+                    case PlayerQueries.COLUMN_JOIN_MESSAGE:
+                        record = record.withJoinMessage(name, column.getValue());
+                        break;
+                    case PlayerQueries.COLUMN_QUIT_MESSAGE:
+                        record = record.withQuitMessage(name, column.getValue());
+                        break;
+                    case PlayerQueries.COLUMN_QUIT_PREFIX:
+                        record = record.withQuitPrefix(name, column.getValue());
+                        break;
+                    case PlayerQueries.COLUMN_QUIT_SUFFIX:
+                        record = record.withQuitSuffix(name, column.getValue());
+                        break;
+                    default:
+                        break;
+                }
+            }
+            return record;
+        }
+    }
+}
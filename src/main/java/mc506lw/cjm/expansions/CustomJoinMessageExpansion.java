@@ -1,13 +1,14 @@
 package mc506lw.cjm.expansions;
 
 import mc506lw.cjm.CustomJoinMessage;
+import mc506lw.cjm.database.PlayerMessageRecord;
 import me.clip.placeholderapi.expansion.PlaceholderExpansion;
 import org.bukkit.OfflinePlayer;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.CompletableFuture;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * PlaceholderAPI expansion for CustomJoinMessage
@@ -16,12 +17,13 @@ import java.util.concurrent.CompletableFuture;
 public class CustomJoinMessageExpansion extends PlaceholderExpansion {
     
     private final CustomJoinMessage plugin;
-    private final Map<String, String> cache = new HashMap<>();
-    private final long CACHE_EXPIRY = 60000; // 60秒缓存
-    private final Map<String, Long> cacheTimestamps = new HashMap<>();
+    private final PlaceholderCache cache;
+    // 正在刷新的玩家，保证同一玩家同时只有一个数据库查询
+    private final Set<UUID> refreshing = ConcurrentHashMap.newKeySet();
     
     public CustomJoinMessageExpansion(CustomJoinMessage plugin) {
         this.plugin = plugin;
+        this.cache = plugin.getPlaceholderCache();
     }
     
     @Override
@@ -50,140 +52,50 @@ public class CustomJoinMessageExpansion extends PlaceholderExpansion {
             return "";
         }
         
-        String playerName = player.getName();
-        String cacheKey = playerName + "_" + params;
-        
-        // 检查缓存是否过期
-        Long timestamp = cacheTimestamps.get(cacheKey);
-        if (timestamp != null && System.currentTimeMillis() - timestamp < CACHE_EXPIRY) {
-            return cache.getOrDefault(cacheKey, "");
+        PlaceholderType type = PlaceholderType.fromParams(params);
+        if (type == null) {
+            return null;
         }
         
-        // 使用CompletableFuture处理异步操作
-            try {
-                String result = null;
-                switch (params.toLowerCase()) {
-                    case "join_message":
-                        // 使用同步方法获取结果，避免阻塞主线程
-                        result = getJoinMessageSync(playerName);
-                        break;
-                    case "join_prefix":
-                        result = getJoinPrefixSync(playerName);
-                        break;
-                    case "join_suffix":
-                        result = getJoinSuffixSync(playerName);
-                        break;
-                    case "quit_message":
-                        result = getQuitMessageSync(playerName);
-                        break;
-                    case "quit_prefix":
-                        result = getQuitPrefixSync(playerName);
-                        break;
-                    case "quit_suffix":
-                        result = getQuitSuffixSync(playerName);
-                        break;
-                    default:
-                        return null;
-                }
-            
-            // 更新缓存
-            cache.put(cacheKey, result != null ? result : "");
-            cacheTimestamps.put(cacheKey, System.currentTimeMillis());
-            
-            return result;
-        } catch (Exception e) {
-            plugin.getLogger().warning("Error retrieving placeholder data: " + e.getMessage());
-            return "";
-        }
-    }
-    
-    /**
-     * 同步获取加入消息
-     * @param playerName 玩家名
-     * @return 加入消息
-     */
-    private String getJoinMessageSync(String playerName) {
-        try {
-            CompletableFuture<String> future = plugin.getDatabaseManager().getJoinMessage(playerName);
-            return future.get(); // 等待异步操作完成
-        } catch (Exception e) {
-            plugin.getLogger().warning("Error getting join message: " + e.getMessage());
-            return "";
-        }
-    }
-    
-    /**
-     * 同步获取加入前缀
-     * @param playerName 玩家名
-     * @return 加入前缀
-     */
-    private String getJoinPrefixSync(String playerName) {
-        try {
-            CompletableFuture<String> future = plugin.getDatabaseManager().getJoinPrefix(playerName);
-            return future.get(); // 等待异步操作完成
-        } catch (Exception e) {
-            plugin.getLogger().warning("Error getting join prefix: " + e.getMessage());
-            return "";
+        // 占位符可能在主线程中被调用（计分板、Tab等），这里只读取内存中的数据，从不等待数据库
+        UUID uuid = player.getUniqueId();
+        String cached = cache.get(uuid, type);
+        if (cached != null) {
+            return cached;
         }
-    }
-    
-    /**
-     * 同步获取加入后缀
-     * @param playerName 玩家名
-     * @return 加入后缀
-     */
-    private String getJoinSuffixSync(String playerName) {
-        try {
-            CompletableFuture<String> future = plugin.getDatabaseManager().getJoinSuffix(playerName);
-            return future.get(); // 等待异步操作完成
-        } catch (Exception e) {
-            plugin.getLogger().warning("Error getting join suffix: " + e.getMessage());
-            return "";
-        }
-    }
-    
-    /**
-     * 同步获取退出消息
-     * @param playerName 玩家名
-     * @return 退出消息
-     */
-    private String getQuitMessageSync(String playerName) {
-        try {
-            CompletableFuture<String> future = plugin.getDatabaseManager().getQuitMessage(playerName);
-            return future.get(); // 等待异步操作完成
-        } catch (Exception e) {
-            plugin.getLogger().warning("Error getting quit message: " + e.getMessage());
-            return "";
-        }
-    }
-    
-    /**
-     * 同步获取退出前缀
-     * @param playerName 玩家名
-     * @return 退出前缀
-     */
-    private String getQuitPrefixSync(String playerName) {
-        try {
-            CompletableFuture<String> future = plugin.getDatabaseManager().getQuitPrefix(playerName);
-            return future.get(); // 等待异步操作完成
-        } catch (Exception e) {
-            plugin.getLogger().warning("Error getting quit prefix: " + e.getMessage());
-            return "";
+        
+        // 在线玩家直接使用登录时预加载的记录
+        PlayerMessageRecord online = plugin.getDatabaseManager().getRecordCache().get(uuid.toString());
+        if (online != null) {
+            String value = type.extract(online);
+            cache.put(uuid, type, value);
+            return value;
         }
+        
+        // 其他玩家在后台刷新，并先返回旧数据
+        refresh(uuid);
+        String stale = cache.getStale(uuid, type);
+        return stale != null ? stale : "";
     }
     
     /**
-     * 同步获取退出后缀
-     * @param playerName 玩家名
-     * @return 退出后缀
+     * 异步刷新玩家的占位符缓存，同一玩家的多次刷新请求会合并为一次查询
+     * @param uuid 玩家UUID
      */
-    private String getQuitSuffixSync(String playerName) {
-        try {
-            CompletableFuture<String> future = plugin.getDatabaseManager().getQuitSuffix(playerName);
-            return future.get(); // 等待异步操作完成
-        } catch (Exception e) {
-            plugin.getLogger().warning("Error getting quit suffix: " + e.getMessage());
-            return "";
+    private void refresh(UUID uuid) {
+        if (!refreshing.add(uuid)) {
+            return;
         }
+        
+        long refresh = cache.beginRefresh(uuid);
+        plugin.getDatabaseManager().getPlayerRecord(uuid.toString()).whenComplete((record, throwable) -> {
+            if (throwable != null) {
+                plugin.getLogger().warning("Error getting player record: " + throwable.getMessage());
+                cache.cancelRefresh(uuid, refresh);
+            } else {
+                cache.putAll(uuid, record, refresh);
+            }
+            refreshing.remove(uuid);
+        });
     }
-}
\ No newline at end of file
+}
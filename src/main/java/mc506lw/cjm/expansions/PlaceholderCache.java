@@ -0,0 +1,186 @@
+package mc506lw.cjm.expansions;
+
+import mc506lw.cjm.database.PlayerMessageRecord;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size-bounded placeholder value cache with per-entry expiry
+ * 有界的占位符值缓存，键为玩家UUID加占位符类型，每个值单独过期
+ * 超过最大玩家数时淘汰最久未使用的玩家
+ */
+public class PlaceholderCache {
+    private static final int TYPE_COUNT = PlaceholderType.values().length;
+
+    private final int maxPlayers;
+    private final long ttlMillis;
+    // 访问顺序的LinkedHashMap，所有访问都需要持有this的锁
+    private final Map<UUID, Entry> entries;
+    // 正在刷新的玩家及其刷新编号，失效时移除，用于丢弃该玩家失效前开始、失效后才完成的刷新结果
+    private final Map<UUID, Long> refreshes = new HashMap<>();
+    // 分配刷新编号，同一玩家较早的刷新不会覆盖较新的刷新
+    private long refreshSequence;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public PlaceholderCache(int maxPlayers, long ttlMillis) {
+        this.maxPlayers = Math.max(1, maxPlayers);
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<UUID, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Entry> eldest) {
+                if (size() > PlaceholderCache.this.maxPlayers) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Get a cached value that has not expired yet
+     * 获取未过期的缓存值
+     * @return the value, or null on a miss | 缓存值，未命中返回null
+     */
+    public String get(UUID uuid, PlaceholderType type) {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Entry entry = entries.get(uuid);
+            int index = type.ordinal();
+            if (entry != null && entry.values[index] != null && now < entry.expiresAt[index]) {
+                hits.increment();
+                return entry.values[index];
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Get a cached value even if it has expired, used while a refresh is running
+     * 获取缓存值，即使已经过期，用于刷新期间返回旧数据
+     * @return the value, or null if never cached | 缓存值，从未缓存返回null
+     */
+    public synchronized String getStale(UUID uuid, PlaceholderType type) {
+        Entry entry = entries.get(uuid);
+        return entry != null ? entry.values[type.ordinal()] : null;
+    }
+
+    /**
+     * Cache a single value
+     * 缓存单个占位符的值
+     */
+    public synchronized void put(UUID uuid, PlaceholderType type, String value) {
+        int index = type.ordinal();
+        Entry entry = entries.computeIfAbsent(uuid, key -> new Entry());
+        entry.values[index] = value;
+        entry.expiresAt[index] = System.currentTimeMillis() + ttlMillis;
+    }
+
+    /**
+     * Start refreshing a player, the returned id is passed to putAll when the record is loaded
+     * 开始刷新玩家的缓存值，加载记录后把返回的编号传给putAll，加载失败时传给cancelRefresh
+     * @return the refresh id | 刷新编号
+     */
+    public synchronized long beginRefresh(UUID uuid) {
+        long refresh = ++refreshSequence;
+        refreshes.put(uuid, refresh);
+        return refresh;
+    }
+
+    /**
+     * Cache every placeholder of a freshly loaded record, unless the player was invalidated meanwhile
+     * 缓存刚加载的记录中的所有占位符值；如果加载期间该玩家发生了失效，则丢弃该记录
+     * 其他玩家的失效不影响这次刷新
+     * @param refresh value of {@link #beginRefresh(UUID)} before loading started | 开始加载前获取的刷新编号
+     */
+    public synchronized void putAll(UUID uuid, PlayerMessageRecord record, long refresh) {
+        if (!refreshes.remove(uuid, refresh)) {
+            return;
+        }
+
+        Entry entry = entries.computeIfAbsent(uuid, key -> new Entry());
+        long expiresAt = System.currentTimeMillis() + ttlMillis;
+        for (PlaceholderType type : PlaceholderType.values()) {
+            entry.values[type.ordinal()] = type.extract(record);
+            entry.expiresAt[type.ordinal()] = expiresAt;
+        }
+    }
+
+    /**
+     * End a refresh whose record could not be loaded
+     * 结束加载失败的刷新
+     * @param refresh value of {@link #beginRefresh(UUID)} | 开始刷新时获取的编号
+     */
+    public synchronized void cancelRefresh(UUID uuid, long refresh) {
+        refreshes.remove(uuid, refresh);
+    }
+
+    /**
+     * Drop all cached values of a player
+     * 清除玩家的所有缓存值
+     */
+    public synchronized void invalidate(UUID uuid) {
+        refreshes.remove(uuid);
+        entries.remove(uuid);
+    }
+
+    /**
+     * Drop all cached values of a player by UUID string, ignoring malformed UUIDs
+     * 通过UUID字符串清除玩家的所有缓存值，忽略格式错误的UUID
+     */
+    public void invalidate(String uuid) {
+        try {
+            invalidate(UUID.fromString(uuid));
+        } catch (IllegalArgumentException ignored) {
+            // 不是有效的UUID，不可能被缓存
+        }
+    }
+
+    public synchronized void clear() {
+        refreshes.clear();
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Hit ratio between 0 and 1
+     * 命中率，范围0到1
+     */
+    public double getHitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * Cached values of one player, indexed by placeholder type
+     * 一个玩家的缓存值，按占位符类型索引
+     */
+    private static final class Entry {
+        private final String[] values = new String[TYPE_COUNT];
+        private final long[] expiresAt = new long[TYPE_COUNT];
+    }
+}
@@ -0,0 +1,81 @@
+package mc506lw.cjm.expansions;
+
+import mc506lw.cjm.database.PlayerMessageRecord;
+
+/**
+ * Placeholders provided by the expansion
+ * 扩展提供的占位符类型
+ */
+public enum PlaceholderType {
+    JOIN_MESSAGE("join_message"),
+    JOIN_PREFIX("join_prefix"),
+    JOIN_SUFFIX("join_suffix"),
+    QUIT_MESSAGE("quit_message"),
+    QUIT_PREFIX("quit_prefix"),
+    QUIT_SUFFIX("quit_suffix");
+
+    private static final PlaceholderType[] VALUES = values();
+
+    private final String params;
+
+    PlaceholderType(String params) {
+        this.params = params;
+    }
+
+    public String getParams() {
+        return params;
+    }
+
+    /**
+     * Find the placeholder type for the given parameters, ignoring case
+     * 根据参数查找占位符类型，忽略大小写
+     * @param params placeholder parameters, e.g. join_message | 占位符参数，例如join_message
+     * @return the type, or null if unknown | 占位符类型，未知参数返回null
+     */
+    public static PlaceholderType fromParams(String params) {
+        for (PlaceholderType type : VALUES) {
+            if (type.params.equalsIgnoreCase(params)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get this placeholder's value from a player record
+     * 从玩家记录中获取该占位符的值
+     * @param record player record, may be null | 玩家记录，可以为null
+     * @return the value, never null | 占位符的值，不会为null
+     */
+    public String extract(PlayerMessageRecord record) {
+        if (record == null) {
+            return "";
+        }
+
+        String value;
+        switch (this) {
+            case JOIN_MESSAGE:
+                value = record.getJoinMessage();
+                break;
+            case JOIN_PREFIX:
+                value = record.getJoinPrefix();
+                break;
+            case JOIN_SUFFIX:
+                value = record.getJoinSuffix();
+                break;
+            case QUIT_MESSAGE:
+                value = record.getQuitMessage();
+                break;
+            case QUIT_PREFIX:
+                value = record.getQuitPrefix();
+                break;
+            case QUIT_SUFFIX:
+                value = record.getQuitSuffix();
+                break;
+            default:
+                value = null;
+                break;
+        }
+        return value != null ? value : "";
+    }
+}
@@ -1,10 +1,16 @@
 package mc506lw.cjm.listeners;
 
 import mc506lw.cjm.CustomJoinMessage;
+import mc506lw.cjm.database.PlayerMessageRecord;
+import mc506lw.cjm.utils.ConfigSnapshot;
+import mc506lw.cjm.utils.LatencyStats;
 import mc506lw.cjm.utils.MessageManager;
+import mc506lw.cjm.utils.MessageRenderEvent;
+import mc506lw.cjm.utils.MessageTemplate;
+import mc506lw.cjm.utils.PermissionGroupIndex.PermissionGroup;
 import mc506lw.cjm.utils.PermissionUtils;
 import mc506lw.cjm.utils.PlaceholderUtil;
-import mc506lw.cjm.utils.SchedulerUtils;
+import org.bukkit.ChatColor;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
@@ -17,98 +23,151 @@ public class PlayerJoinListener implements Listener {
     private final CustomJoinMessage plugin;
     private final MessageManager messageManager;
     private final PermissionUtils permissionUtils;
-    private final SchedulerUtils schedulerUtils;
     private final PlaceholderUtil placeholderUtil;
 
     public PlayerJoinListener(CustomJoinMessage plugin) {
         this.plugin = plugin;
         this.messageManager = plugin.getMessageManager();
         this.permissionUtils = plugin.getPermissionUtils();
-        this.schedulerUtils = plugin.getSchedulerUtils();
         this.placeholderUtil = plugin.getPlaceholderUtil();
     }
 
     @EventHandler(priority = EventPriority.HIGHEST)
     public void onPlayerJoin(PlayerJoinEvent event) {
+        long eventNanos = System.nanoTime();
         Player player = event.getPlayer();
-        String playerName = player.getName();
+        
+        // Resolve the player's join permission group once on the main thread, later lookups read the cache
+        permissionUtils.cachePermissionGroups(player);
+        plugin.getLatencyStats().recordSince(LatencyStats.Stage.GROUP_RESOLVE, eventNanos);
+        
+        // Claim the record preloaded during pre-login, unclaimed records expire after a few seconds
+        String uuid = player.getUniqueId().toString();
+        PlayerMessageRecord cachedRecord = plugin.getDatabaseManager().getRecordCache().claim(uuid);
         
         // Hide default join message if configured
-        if (plugin.getConfigManager().shouldHideDefaultJoinMessage()) {
+        if (plugin.getConfigManager().getSnapshot().shouldHideDefaultJoinMessage()) {
             event.setJoinMessage(null);
         }
         
-        // Get custom join message asynchronously
-        CompletableFuture<String> futureMessage = plugin.getDatabaseManager().getJoinMessage(player.getUniqueId().toString());
+        // During a join storm the message is merged into a digest, skip rendering it
+        if (plugin.getJoinStormCoalescer().recordJoin(player.getName())) {
+            return;
+        }
+        
+        if (cachedRecord != null) {
+            // Record was preloaded during pre-login, render and queue right away
+            String message = buildJoinMessage(player, cachedRecord.getJoinMessage());
+            if (message != null) {
+                plugin.getBroadcastQueue().enqueueJoin(player, message, eventNanos);
+            }
+            return;
+        }
+        
+        // Get the player's message record asynchronously
+        CompletableFuture<PlayerMessageRecord> futureRecord = plugin.getDatabaseManager().getPlayerRecord(uuid);
         
         // When the future is complete, process and broadcast the message
-        futureMessage.thenAccept(customMessage -> {
-            String message;
-            
-            // Check if player has a custom permission group
-            String permissionGroup = permissionUtils.getHighestPriorityPermissionGroup(player);
-            
-            if (plugin.getConfigManager().isPrefixSuffixMode()) {
-                // Prefix-suffix mode
-                if (customMessage != null && !customMessage.isEmpty()) {
-                    // Use custom prefix and suffix from database
-                    // Process all color codes including RGB formats
-                    message = messageManager.processColors(customMessage);
-                } else if (permissionGroup != null) {
-                    // Use permission group prefix and suffix
-                    String prefix = permissionUtils.getGroupJoinPrefix(permissionGroup);
-                    String suffix = permissionUtils.getGroupJoinSuffix(permissionGroup);
-                    
-                    // Format prefix and suffix with placeholders
-                    prefix = messageManager.formatMessage(prefix, playerName);
-                    suffix = messageManager.formatMessage(suffix, playerName);
-                    
-                    // Build the complete message with color reset before player name
-                    message = prefix + "&r" + playerName + suffix;
-                    // Process all color codes including RGB formats
-                    message = messageManager.processColors(message);
-                } else {
-                    // Use default prefix and suffix
-                    String prefix = plugin.getConfigManager().getDefaultJoinPrefix();
-                    String suffix = plugin.getConfigManager().getDefaultJoinSuffix();
-                    
-                    // Format prefix and suffix with placeholders
-                    prefix = messageManager.formatMessage(prefix, playerName);
-                    suffix = messageManager.formatMessage(suffix, playerName);
-                    
-                    // Build the complete message with color reset before player name
-                    message = prefix + "&r" + playerName + suffix;
-                    // Process all color codes including RGB formats
-                    message = messageManager.processColors(message);
-                }
-            } else {
-                // Full mode (default)
-                if (customMessage != null) {
-                    // Use custom message
-                    message = messageManager.formatMessage(customMessage, playerName);
-                } else if (permissionGroup != null) {
-                    // Use permission group message
-                    message = permissionUtils.getGroupJoinMessage(permissionGroup);
-                    message = messageManager.formatMessage(message, playerName);
-                } else {
-                    // Use default message
-                    message = plugin.getConfigManager().getDefaultJoinMessage();
-                    message = messageManager.formatMessage(message, playerName);
-                }
-                // Process all color codes including RGB formats
-                message = messageManager.processColors(message);
+        futureRecord.thenAccept(record -> {
+            String customMessage = record != null ? record.getJoinMessage() : null;
+            final String finalMessage = buildJoinMessage(player, customMessage);
+            if (finalMessage == null) {
+                return;
             }
             
-            // Replace placeholders using PlaceholderUtil
-            message = placeholderUtil.replacePlaceholders(player, message);
+            // Queue the message, it is broadcast on a later tick within the per-tick budget
+            plugin.getBroadcastQueue().enqueueJoin(player, finalMessage, eventNanos);
+        });
+    }
+    
+    /**
+     * Build the join message for a player
+     * 构建玩家的加入消息
+     * 
+     * @param player The player who joined
+     * @param customMessage The player's custom join message, or null if not set
+     * @return The fully formatted join message, or null if the configured template is missing
+     */
+    private String buildJoinMessage(Player player, String customMessage) {
+        MessageRenderEvent event = new MessageRenderEvent();
+        event.begin();
+        String message = renderJoinMessage(player, customMessage, event);
+        event.end();
+        
+        // Only filled in and committed while a JFR recording has the event enabled
+        if (message != null && event.shouldCommit()) {
+            event.setMessageType("join");
+            event.setLength(message.length());
+            event.commit();
+        }
+        return message;
+    }
+    
+    /**
+     * Render the join message from the custom, group or default template
+     * 从自定义、权限组或默认模板渲染加入消息
+     * 
+     * @param player The player who joined
+     * @param customMessage The player's custom join message, or null if not set
+     * @param event The JFR event receiving the template source and PlaceholderAPI time
+     * @return The fully formatted join message, or null if the configured template is missing
+     */
+    private String renderJoinMessage(Player player, String customMessage, MessageRenderEvent event) {
+        String playerName = player.getName();
+        ConfigSnapshot config = plugin.getConfigManager().getSnapshot();
+        
+        // Check if player has a custom permission group
+        PermissionGroup permissionGroup = permissionUtils.getJoinPermissionGroup(player);
+        
+        if (config.isPrefixSuffixMode() && (customMessage == null || customMessage.isEmpty())) {
+            // Prefix-suffix mode, use the permission group or default prefix and suffix
+            MessageTemplate prefixTemplate = permissionGroup != null
+                    ? permissionGroup.getJoinPrefixTemplate() : config.getDefaultJoinPrefixTemplate();
+            MessageTemplate suffixTemplate = permissionGroup != null
+                    ? permissionGroup.getJoinSuffixTemplate() : config.getDefaultJoinSuffixTemplate();
+            if (prefixTemplate == null || suffixTemplate == null) {
+                return null;
+            }
+            event.setTemplateSource(permissionGroup != null ? "group" : "default");
             
-            // Create a final copy of the message for use in lambda
-            final String finalMessage = message;
+            // Build the complete message with color reset before player name
+            LatencyStats stats = plugin.getLatencyStats();
+            long start = System.nanoTime();
+            String message = messageManager.render(prefixTemplate, playerName) + ChatColor.RESET + playerName
+                    + messageManager.render(suffixTemplate, playerName);
+            stats.recordSince(LatencyStats.Stage.RENDER, start);
             
-            // Broadcast the message using the appropriate scheduler
-            schedulerUtils.runTask(() -> {
-                plugin.getServer().broadcastMessage(finalMessage);
-            });
-        });
+            // Replace placeholders using PlaceholderUtil
+            if (prefixTemplate.hasPlaceholders() || suffixTemplate.hasPlaceholders()) {
+                start = System.nanoTime();
+                message = placeholderUtil.replacePlaceholders(player, message);
+                long placeholderTime = System.nanoTime() - start;
+                stats.record(LatencyStats.Stage.PLACEHOLDERS, placeholderTime);
+                event.setPlaceholderTime(placeholderTime);
+            }
+            return message;
+        }
+        
+        MessageTemplate template;
+        if (config.isPrefixSuffixMode()) {
+            // Custom prefix and suffix from database, only color codes are processed
+            template = messageManager.getTemplate(customMessage, MessageTemplate.Mode.COLORS);
+            event.setTemplateSource("custom");
+        } else if (customMessage != null) {
+            // Use custom message
+            template = messageManager.getTemplate(customMessage, MessageTemplate.Mode.FORMAT);
+            event.setTemplateSource("custom");
+        } else if (permissionGroup != null) {
+            // Use permission group message
+            template = permissionGroup.getJoinMessageTemplate();
+            event.setTemplateSource("group");
+        } else {
+            // Use default message
+            template = config.getDefaultJoinMessageTemplate();
+            event.setTemplateSource("default");
+        }
+        
+        // Render the compiled template, including placeholders
+        return messageManager.render(template, player, event);
     }
 }
\ No newline at end of file
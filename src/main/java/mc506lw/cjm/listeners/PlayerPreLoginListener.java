@@ -0,0 +1,56 @@
+package mc506lw.cjm.listeners;
+
+import mc506lw.cjm.CustomJoinMessage;
+import mc506lw.cjm.database.DatabaseManager;
+import mc506lw.cjm.database.PlayerMessageRecord;
+import mc506lw.cjm.utils.MessageManager;
+import mc506lw.cjm.utils.MessageTemplate;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerLoginEvent;
+
+/**
+ * Preloads player message records before the player joins
+ * 在玩家加入前预加载玩家消息记录
+ */
+public class PlayerPreLoginListener implements Listener {
+    private final CustomJoinMessage plugin;
+    private final DatabaseManager databaseManager;
+    private final MessageManager messageManager;
+
+    public PlayerPreLoginListener(CustomJoinMessage plugin) {
+        this.plugin = plugin;
+        this.databaseManager = plugin.getDatabaseManager();
+        this.messageManager = plugin.getMessageManager();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onAsyncPlayerPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            return;
+        }
+
+        // This event already runs off the main thread, so load the record directly
+        String uuid = event.getUniqueId().toString();
+        databaseManager.preloadPlayerRecord(uuid);
+
+        // Compile the player's own templates here too, so the join and quit events only render them
+        PlayerMessageRecord record = databaseManager.getRecordCache().get(uuid);
+        if (record != null) {
+            MessageTemplate.Mode joinMode = plugin.getConfigManager().getSnapshot().isPrefixSuffixMode()
+                    ? MessageTemplate.Mode.COLORS : MessageTemplate.Mode.FORMAT;
+            messageManager.getTemplate(record.getJoinMessage(), joinMode);
+            messageManager.getTemplate(record.getQuitMessage(), MessageTemplate.Mode.QUIT);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerLogin(PlayerLoginEvent event) {
+        // Drop the preloaded record if the login was denied after pre-login
+        if (event.getResult() != PlayerLoginEvent.Result.ALLOWED) {
+            databaseManager.getRecordCache().remove(event.getPlayer().getUniqueId().toString());
+        }
+    }
+}
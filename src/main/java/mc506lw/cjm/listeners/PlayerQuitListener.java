@@ -1,11 +1,12 @@
  package mc506lw.cjm.listeners;
 
  import mc506lw.cjm.CustomJoinMessage;
+ import mc506lw.cjm.database.PlayerMessageRecord;
+ import mc506lw.cjm.utils.LatencyStats;
  import mc506lw.cjm.utils.MessageManager;
+ import mc506lw.cjm.utils.MessageRenderEvent;
+ import mc506lw.cjm.utils.MessageTemplate;
  import mc506lw.cjm.utils.PermissionUtils;
- import mc506lw.cjm.utils.PlaceholderUtil;
- import mc506lw.cjm.utils.SchedulerUtils;
- import org.bukkit.Bukkit;
  import org.bukkit.entity.Player;
  import org.bukkit.event.EventHandler;
  import org.bukkit.event.EventPriority;
@@ -13,57 +14,89 @@
  import org.bukkit.event.player.PlayerQuitEvent;
 
  import java.util.UUID;
- import java.util.concurrent.CompletableFuture;
 
  public class PlayerQuitListener implements Listener {
      private final CustomJoinMessage plugin;
      private final MessageManager messageManager;
      private final PermissionUtils permissionUtils;
-     private final PlaceholderUtil placeholderUtil;
-     private final SchedulerUtils schedulerUtils;
      
      public PlayerQuitListener(CustomJoinMessage plugin) {
          this.plugin = plugin;
          this.messageManager = plugin.getMessageManager();
          this.permissionUtils = plugin.getPermissionUtils();
-         this.placeholderUtil = plugin.getPlaceholderUtil();
-         this.schedulerUtils = plugin.getSchedulerUtils();
      }
      
      @EventHandler(priority = EventPriority.MONITOR)
      public void onPlayerQuit(PlayerQuitEvent event) {
          // Hide the default quit message
          event.setQuitMessage(null);
+         long eventNanos = System.nanoTime();
          
          // Get player information
          Player player = event.getPlayer();
          final String playerName = player.getName();
          final UUID playerUuid = player.getUniqueId();
          
-         // Process quit message asynchronously to avoid blocking the main thread
-         plugin.getSchedulerUtils().runTaskAsynchronously(() -> {
-             // Get the quit message from database
-             plugin.getDatabaseManager().getQuitMessage(playerUuid.toString()).thenAccept(quitMessage -> {
-                 if (quitMessage != null && !quitMessage.isEmpty()) {
-                     // Replace placeholders in the quit message using the offline player method
-                     String finalMessage = placeholderUtil.replacePlaceholders(playerName, quitMessage);
-                     
-                     // Format the message with player name
-                     finalMessage = messageManager.formatMessage(finalMessage, playerName);
-                     
-                     // Process color codes based on player permissions (using player name for offline players)
-                     finalMessage = messageManager.processQuitMessageColors(finalMessage, playerName);
-                     
-                     // Broadcast the custom quit message on the main thread
-                     final String broadcastMessage = finalMessage;
-                     plugin.getSchedulerUtils().runTask(() -> {
-                         Bukkit.broadcastMessage(broadcastMessage);
-                     });
-                 }
-             }).exceptionally(throwable -> {
-                 plugin.getLogger().warning("Failed to get quit message for player " + playerName + ": " + throwable.getMessage());
-                 return null;
-             });
+         final String uuid = playerUuid.toString();
+         plugin.getPlaceholderCache().invalidate(playerUuid);
+         permissionUtils.invalidatePermissionGroups(playerUuid);
+         
+         // The join message was never sent, so skip the quit message as well
+         if (plugin.getBroadcastQueue().cancelJoin(playerUuid)) {
+             plugin.getDatabaseManager().getRecordCache().remove(uuid);
+             return;
+         }
+         
+         PlayerMessageRecord cachedRecord = plugin.getDatabaseManager().getRecordCache().get(uuid);
+         
+         if (cachedRecord != null) {
+             // Record was preloaded at login, render from memory and drop the cache entry
+             broadcastQuitMessage(playerName, cachedRecord.getQuitMessage(), eventNanos);
+             plugin.getDatabaseManager().getRecordCache().remove(uuid);
+             return;
+         }
+         
+         // Get the quit message from the database, the query already runs on the database executor
+         plugin.getDatabaseManager().getPlayerRecord(uuid).thenAccept(record -> {
+             broadcastQuitMessage(playerName, record != null ? record.getQuitMessage() : null, eventNanos);
+         }).exceptionally(throwable -> {
+             plugin.getLogger().warning("Failed to get quit message for player " + playerName + ": " + throwable.getMessage());
+             return null;
          });
      }
+     
+     /**
+      * Format and broadcast a player's custom quit message
+      * 格式化并广播玩家的自定义退出消息
+      * 
+      * @param playerName The name of the player who quit
+      * @param quitMessage The player's custom quit message, or null if not set
+      * @param eventNanos System.nanoTime() when the player quit
+      */
+     private void broadcastQuitMessage(String playerName, String quitMessage, long eventNanos) {
+         if (quitMessage == null || quitMessage.isEmpty()) {
+             return;
+         }
+         
+         // Render the compiled template: offline placeholders, player name, then color codes removed
+         MessageTemplate template = messageManager.getTemplate(quitMessage, MessageTemplate.Mode.QUIT);
+         
+         MessageRenderEvent event = new MessageRenderEvent();
+         event.begin();
+         long start = System.nanoTime();
+         String broadcastMessage = messageManager.render(template, playerName);
+         plugin.getLatencyStats().recordSince(LatencyStats.Stage.RENDER, start);
+         event.end();
+         
+         // Quit messages only have custom templates and never go through PlaceholderAPI
+         if (event.shouldCommit()) {
+             event.setMessageType("quit");
+             event.setTemplateSource("custom");
+             event.setLength(broadcastMessage.length());
+             event.commit();
+         }
+         
+         // Queue the custom quit message, it is broadcast on a later tick within the per-tick budget
+         plugin.getBroadcastQueue().enqueueQuit(broadcastMessage, eventNanos);
+     }
  }
\ No newline at end of file
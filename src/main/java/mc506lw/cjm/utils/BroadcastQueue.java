@@ -0,0 +1,216 @@
+package mc506lw.cjm.utils;
+
+import mc506lw.cjm.CustomJoinMessage;
+import org.bukkit.entity.Player;
+
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Central queue for join and quit broadcasts, drained once per tick within a budget
+ * 加入和退出消息的统一广播队列，每个tick发送一次，并限制每个tick的消息数和耗时
+ * 超出预算的消息留到下一个tick；玩家在加入消息发送前就已退出时，加入消息和退出消息都不再发送
+ */
+public class BroadcastQueue {
+    private final CustomJoinMessage plugin;
+    private final Queue<Entry> queue = new ConcurrentLinkedQueue<>();
+    // ConcurrentLinkedQueue.size()需要遍历，单独计数
+    private final AtomicInteger size = new AtomicInteger();
+    // 尚未发送的加入消息，用于玩家退出时撤回
+    private final ConcurrentHashMap<UUID, Entry> pendingJoins = new ConcurrentHashMap<>();
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    // 预算用完、仍有消息留到下一个tick的次数
+    private final LongAdder deferredTicks = new LongAdder();
+
+    /**
+     * 队列中的一条消息
+     */
+    private static final class Entry {
+        final String message;
+        // 加入消息对应的玩家，其他消息为null
+        final Player subject;
+        // 从事件到广播的总耗时记入的阶段，与事件无关的消息为null
+        final LatencyStats.Stage totalStage;
+        final long eventNanos;
+        final long enqueuedNanos = System.nanoTime();
+        volatile boolean cancelled;
+
+        Entry(String message, Player subject, LatencyStats.Stage totalStage, long eventNanos) {
+            this.message = message;
+            this.subject = subject;
+            this.totalStage = totalStage;
+            this.eventNanos = eventNanos;
+        }
+    }
+
+    public BroadcastQueue(CustomJoinMessage plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Start draining the queue once per tick
+     * 启动每个tick发送一次的任务
+     */
+    public void start() {
+        plugin.getSchedulerUtils().runTaskTimer(this::drain, 1L, 1L);
+    }
+
+    /**
+     * Queue a player's join message
+     * 把玩家的加入消息加入队列，玩家在发送前退出时不会发送
+     * @param player the player who joined | 加入的玩家
+     * @param message the rendered join message | 渲染后的加入消息
+     * @param eventNanos System.nanoTime() when the player joined | 玩家加入时的System.nanoTime()
+     */
+    public void enqueueJoin(Player player, String message, long eventNanos) {
+        Entry entry = new Entry(message, player, LatencyStats.Stage.JOIN_TOTAL, eventNanos);
+        if (!plugin.getConfigManager().getSnapshot().isBroadcastQueueEnabled()) {
+            send(entry);
+            return;
+        }
+
+        pendingJoins.put(player.getUniqueId(), entry);
+        offer(entry);
+    }
+
+    /**
+     * Queue a player's quit message
+     * 把玩家的退出消息加入队列
+     * @param message the rendered quit message | 渲染后的退出消息
+     * @param eventNanos System.nanoTime() when the player quit | 玩家退出时的System.nanoTime()
+     */
+    public void enqueueQuit(String message, long eventNanos) {
+        offerOrSend(new Entry(message, null, LatencyStats.Stage.QUIT_TOTAL, eventNanos));
+    }
+
+    /**
+     * Queue a message that is not tied to a player event, such as a join storm digest
+     * 把与玩家事件无关的消息加入队列，例如加入风暴摘要
+     * @param message the rendered message | 渲染后的消息
+     */
+    public void enqueue(String message) {
+        offerOrSend(new Entry(message, null, null, 0L));
+    }
+
+    private void offerOrSend(Entry entry) {
+        if (!plugin.getConfigManager().getSnapshot().isBroadcastQueueEnabled()) {
+            send(entry);
+            return;
+        }
+        offer(entry);
+    }
+
+    private void offer(Entry entry) {
+        queue.offer(entry);
+        size.incrementAndGet();
+        enqueued.increment();
+    }
+
+    /**
+     * Withdraw a player's join message that has not been sent yet
+     * 撤回玩家尚未发送的加入消息
+     * @param uuid the player who quit | 退出的玩家
+     * @return true if a pending join message was withdrawn, the quit message should then be skipped too | 撤回了加入消息时返回true，此时退出消息也不应发送
+     */
+    public boolean cancelJoin(UUID uuid) {
+        Entry entry = pendingJoins.remove(uuid);
+        if (entry == null) {
+            return false;
+        }
+        entry.cancelled = true;
+        return true;
+    }
+
+    /**
+     * 每个tick调用一次，在消息数和耗时预算内发送队列中的消息
+     * 每个tick至少发送一条消息，保证队列不会停滞
+     */
+    private void drain() {
+        if (size.get() == 0) {
+            return;
+        }
+
+        ConfigSnapshot config = plugin.getConfigManager().getSnapshot();
+        int maxMessages = Math.max(1, config.getBroadcastQueueMaxMessages());
+        long budgetNanos = config.getBroadcastQueueMaxMicros() * 1000L;
+        long start = System.nanoTime();
+        int sentThisTick = 0;
+
+        Entry entry;
+        while ((entry = queue.peek()) != null) {
+            if (sentThisTick >= maxMessages
+                    || (sentThisTick > 0 && budgetNanos > 0 && System.nanoTime() - start >= budgetNanos)) {
+                deferredTicks.increment();
+                return;
+            }
+
+            queue.poll();
+            size.decrementAndGet();
+            if (entry.subject != null) {
+                pendingJoins.remove(entry.subject.getUniqueId(), entry);
+                // 玩家已退出，加入消息不再发送
+                if (entry.cancelled || !entry.subject.isOnline()) {
+                    deduplicated.increment();
+                    continue;
+                }
+            }
+
+            plugin.getLatencyStats().recordSince(LatencyStats.Stage.BROADCAST_QUEUE, entry.enqueuedNanos);
+            send(entry);
+            sentThisTick++;
+        }
+    }
+
+    /**
+     * 广播消息并记录广播耗时和从事件开始的总耗时
+     */
+    private void send(Entry entry) {
+        LatencyStats stats = plugin.getLatencyStats();
+        long start = System.nanoTime();
+        plugin.getSchedulerUtils().broadcast(entry.message, plugin.getConfigManager().getSnapshot().isBroadcastRegionDelivery());
+        stats.recordSince(LatencyStats.Stage.BROADCAST, start);
+        if (entry.totalStage != null) {
+            stats.recordSince(entry.totalStage, entry.eventNanos);
+        }
+        sent.increment();
+    }
+
+    /**
+     * Messages waiting to be sent
+     * 等待发送的消息数
+     */
+    public int getQueuedCount() {
+        return size.get();
+    }
+
+    public long getEnqueuedCount() {
+        return enqueued.sum();
+    }
+
+    public long getSentCount() {
+        return sent.sum();
+    }
+
+    /**
+     * Join messages dropped because the player left before they were sent
+     * 因玩家在发送前退出而丢弃的加入消息数
+     */
+    public long getDeduplicatedCount() {
+        return deduplicated.sum();
+    }
+
+    /**
+     * Ticks that ran out of budget with messages left over
+     * 预算用完、仍有消息留到下一个tick的次数
+     */
+    public long getDeferredTickCount() {
+        return deferredTicks.sum();
+    }
+}
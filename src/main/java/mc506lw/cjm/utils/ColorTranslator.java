@@ -0,0 +1,173 @@
+package mc506lw.cjm.utils;
+
+/**
+ * Single-pass color code translator and stripper
+ * 单次扫描的颜色代码转换和移除工具
+ * 支持&加颜色字符、&#RRGGBB、&#RGB以及§加颜色字符，不使用正则表达式，结果写入线程复用的缓冲区
+ */
+public final class ColorTranslator {
+    public static final char COLOR_CHAR = '§';
+    public static final char ALT_COLOR_CHAR = '&';
+
+    // 缓冲区超过该容量后不再复用，避免一条超长消息一直占用内存
+    private static final int MAX_BUFFER_CAPACITY = 4096;
+    // 颜色字符表，与ChatColor支持的代码一致：0-9、a-f、k-o、r、x，不区分大小写
+    private static final boolean[] CODES = new boolean[128];
+
+    static {
+        for (char c : "0123456789abcdefklmnorx".toCharArray()) {
+            CODES[c] = true;
+            CODES[Character.toUpperCase(c)] = true;
+        }
+    }
+
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    private ColorTranslator() {
+    }
+
+    /**
+     * Translate &amp; color codes and &amp;#RRGGBB / &amp;#RGB hex colors into § codes
+     * 把&颜色代码和&#RRGGBB、&#RGB十六进制颜色转换为§代码，已有的§代码保持不变
+     * @param text text to translate, may be null | 要转换的文本，可以为null
+     * @return the translated text, or null if text is null | 转换后的文本，text为null时返回null
+     */
+    public static String translate(String text) {
+        if (text == null) {
+            return null;
+        }
+
+        int first = text.indexOf(ALT_COLOR_CHAR);
+        if (first < 0) {
+            return text;
+        }
+
+        StringBuilder out = buffer();
+        out.append(text, 0, first);
+        int length = text.length();
+        int i = first;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (c == ALT_COLOR_CHAR) {
+                int codeLength = codeLengthAt(text, i);
+                if (codeLength > 0) {
+                    appendTranslated(out, text, i, codeLength);
+                    i += codeLength;
+                    continue;
+                }
+            }
+            out.append(c);
+            i++;
+        }
+        return release(out);
+    }
+
+    /**
+     * Remove all &amp; and § color codes, including hex colors
+     * 移除所有&和§颜色代码，包括十六进制颜色
+     * @param text text to strip, may be null | 要处理的文本，可以为null
+     * @return the text without color codes, or null if text is null | 移除颜色代码后的文本，text为null时返回null
+     */
+    public static String strip(String text) {
+        if (text == null) {
+            return null;
+        }
+        if (text.indexOf(ALT_COLOR_CHAR) < 0 && text.indexOf(COLOR_CHAR) < 0) {
+            return text;
+        }
+
+        StringBuilder out = buffer();
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            int codeLength = codeLengthAt(text, i);
+            if (codeLength > 0) {
+                i += codeLength;
+            } else {
+                out.append(text.charAt(i));
+                i++;
+            }
+        }
+        return release(out);
+    }
+
+    /**
+     * Length of the color code starting at index, 0 if there is none
+     * 获取从index开始的颜色代码长度
+     * &#RRGGBB为8，&#RGB为5，&或§加颜色字符为2，不是颜色代码时为0
+     * @param text text to check | 要检查的文本
+     * @param index index of the &amp; or § character | &或§所在的位置
+     * @return code length | 颜色代码长度
+     */
+    public static int codeLengthAt(CharSequence text, int index) {
+        int length = text.length();
+        if (index + 1 >= length) {
+            return 0;
+        }
+
+        char c = text.charAt(index);
+        char next = text.charAt(index + 1);
+        if (c == ALT_COLOR_CHAR && next == '#') {
+            int digits = 0;
+            while (digits < 6 && index + 2 + digits < length && isHexDigit(text.charAt(index + 2 + digits))) {
+                digits++;
+            }
+            if (digits == 6) {
+                return 8;
+            }
+            return digits >= 3 ? 5 : 0;
+        }
+        if ((c == ALT_COLOR_CHAR || c == COLOR_CHAR) && isCode(next)) {
+            return 2;
+        }
+        return 0;
+    }
+
+    /**
+     * Append the § form of the &amp; color code at index
+     * 把index处的&颜色代码以§形式追加到out，&#RGB会展开为§x§R§R§G§G§B§B
+     * @param codeLength length returned by {@link #codeLengthAt(CharSequence, int)} | 颜色代码长度
+     */
+    public static void appendTranslated(StringBuilder out, CharSequence text, int index, int codeLength) {
+        switch (codeLength) {
+            case 8:
+                out.append(COLOR_CHAR).append('x');
+                for (int i = index + 2; i < index + 8; i++) {
+                    out.append(COLOR_CHAR).append(text.charAt(i));
+                }
+                break;
+            case 5:
+                out.append(COLOR_CHAR).append('x');
+                for (int i = index + 2; i < index + 5; i++) {
+                    char digit = text.charAt(i);
+                    out.append(COLOR_CHAR).append(digit).append(COLOR_CHAR).append(digit);
+                }
+                break;
+            default:
+                out.append(COLOR_CHAR).append(Character.toLowerCase(text.charAt(index + 1)));
+                break;
+        }
+    }
+
+    public static boolean isCode(char c) {
+        return c < 128 && CODES[c];
+    }
+
+    public static boolean isHexDigit(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    private static StringBuilder buffer() {
+        StringBuilder buffer = BUFFER.get();
+        buffer.setLength(0);
+        return buffer;
+    }
+
+    private static String release(StringBuilder buffer) {
+        String result = buffer.toString();
+        if (buffer.capacity() > MAX_BUFFER_CAPACITY) {
+            BUFFER.set(new StringBuilder(256));
+        }
+        return result;
+    }
+}
@@ -19,6 +19,8 @@ public class ConfigManager {
     private final CustomJoinMessage plugin;
     private FileConfiguration config;
     private FileConfiguration messages;
+    // 每次加载配置时整体替换，读取方不需要加锁也不会看到一半新一半旧的配置
+    private volatile ConfigSnapshot snapshot;
     private static final String CURRENT_CONFIG_VERSION = "1.1.0";
     private String lastBackupFile;
     private String lastMessagesBackupFile;
@@ -30,6 +32,7 @@ public class ConfigManager {
         checkAndUpdateConfig();
         checkAndUpdateMessages();
         this.config = plugin.getConfig();
+        this.snapshot = new ConfigSnapshot(config);
         this.messages = YamlConfiguration.loadConfiguration(new File(plugin.getDataFolder(), "messages.yml"));
     }
 
@@ -173,6 +176,14 @@ public class ConfigManager {
         return config;
     }
 
+    /**
+     * Get the current config snapshot, read it once per event to see one consistent configuration
+     * 获取当前的配置快照，每个事件只读取一次即可保证使用同一份配置
+     */
+    public ConfigSnapshot getSnapshot() {
+        return snapshot;
+    }
+
     public FileConfiguration getMessages() {
         return messages;
     }
@@ -267,6 +278,8 @@ public class ConfigManager {
         
         // Reload the configuration
         plugin.reloadConfig();
+        config = plugin.getConfig();
+        snapshot = new ConfigSnapshot(config);
         messages = YamlConfiguration.loadConfiguration(messagesFile);
         
         return configUpdated || messagesUpdated;
@@ -281,105 +294,242 @@ public class ConfigManager {
     }
 
     public String getMessageMode() {
-        return config.getString("message-mode", "full");
+        return snapshot.getMessageMode();
     }
 
     public boolean isFullMode() {
-        return "full".equalsIgnoreCase(getMessageMode());
+        return snapshot.isFullMode();
     }
 
     public boolean isPrefixSuffixMode() {
-        return "prefix_suffix".equalsIgnoreCase(getMessageMode());
+        return snapshot.isPrefixSuffixMode();
+    }
+
+    public boolean isBroadcastRegionDelivery() {
+        return snapshot.isBroadcastRegionDelivery();
+    }
+
+    public boolean isBroadcastQueueEnabled() {
+        return snapshot.isBroadcastQueueEnabled();
+    }
+
+    public int getBroadcastQueueMaxMessages() {
+        return snapshot.getBroadcastQueueMaxMessages();
+    }
+
+    public long getBroadcastQueueMaxMicros() {
+        return snapshot.getBroadcastQueueMaxMicros();
+    }
+
+    public boolean isJoinStormEnabled() {
+        return snapshot.isJoinStormEnabled();
+    }
+
+    public int getJoinStormThreshold() {
+        return snapshot.getJoinStormThreshold();
+    }
+
+    public int getJoinStormWindow() {
+        return snapshot.getJoinStormWindow();
+    }
+
+    public int getJoinStormDigestInterval() {
+        return snapshot.getJoinStormDigestInterval();
+    }
+
+    public int getJoinStormMaxNames() {
+        return snapshot.getJoinStormMaxNames();
+    }
+
+    public String getJoinStormDigestMessage() {
+        return snapshot.getJoinStormDigestMessage();
+    }
+
+    public String getJoinStormMorePlayers() {
+        return snapshot.getJoinStormMorePlayers();
     }
 
     public String getDefaultJoinMessage() {
-        return config.getString("default-join-message", "&e%player_name% 加入了服务器");
+        return snapshot.getDefaultJoinMessage();
     }
 
     public String getDefaultJoinPrefix() {
-        return config.getString("default-join-prefix", "&e欢迎 ");
+        return snapshot.getDefaultJoinPrefix();
     }
 
     public String getDefaultJoinSuffix() {
-        return config.getString("default-join-suffix", " 加入服务器！");
+        return snapshot.getDefaultJoinSuffix();
     }
 
     public boolean shouldHideDefaultJoinMessage() {
-        return config.getBoolean("hide-default-join-message", true);
+        return snapshot.shouldHideDefaultJoinMessage();
     }
 
     public String getDatabaseType() {
-        return config.getString("database.type", "sqlite");
+        return snapshot.getDatabaseType();
     }
 
     public String getSQLiteFile() {
-        return config.getString("database.sqlite.file", "joinmessages.db");
+        return snapshot.getSQLiteFile();
+    }
+
+    public boolean isSQLiteWalEnabled() {
+        return snapshot.isSQLiteWalEnabled();
+    }
+
+    public String getSQLiteSynchronous() {
+        return snapshot.getSQLiteSynchronous();
+    }
+
+    public int getSQLiteCacheSize() {
+        return snapshot.getSQLiteCacheSize();
+    }
+
+    public long getSQLiteMmapSize() {
+        return snapshot.getSQLiteMmapSize();
+    }
+
+    public int getSQLiteBusyTimeout() {
+        return snapshot.getSQLiteBusyTimeout();
+    }
+
+    public int getSQLiteMaxConnections() {
+        return snapshot.getSQLiteMaxConnections();
+    }
+
+    public int getSQLiteMaintenanceInterval() {
+        return snapshot.getSQLiteMaintenanceInterval();
     }
 
     public String getMySQLHost() {
-        return config.getString("database.mysql.host", "localhost");
+        return snapshot.getMySQLHost();
     }
 
     public int getMySQLPort() {
-        return config.getInt("database.mysql.port", 3306);
+        return snapshot.getMySQLPort();
     }
 
     public String getMySQLDatabase() {
-        return config.getString("database.mysql.database", "minecraft");
+        return snapshot.getMySQLDatabase();
     }
 
     public String getMySQLUsername() {
-        return config.getString("database.mysql.username", "root");
+        return snapshot.getMySQLUsername();
     }
 
     public String getMySQLPassword() {
-        return config.getString("database.mysql.password", "password");
+        return snapshot.getMySQLPassword();
     }
 
     public String getMySQLTable() {
-        return config.getString("database.mysql.table", "joinmessages");
+        return snapshot.getMySQLTable();
+    }
+
+    public int getPoolMinSize() {
+        return snapshot.getPoolMinSize();
+    }
+
+    public int getPoolMaxSize() {
+        return snapshot.getPoolMaxSize();
+    }
+
+    public long getPoolConnectionTimeout() {
+        return snapshot.getPoolConnectionTimeout();
+    }
+
+    public long getPoolIdleTimeout() {
+        return snapshot.getPoolIdleTimeout();
+    }
+
+    public long getPoolLeakDetectionThreshold() {
+        return snapshot.getPoolLeakDetectionThreshold();
+    }
+
+    public int getPoolValidationTimeout() {
+        return snapshot.getPoolValidationTimeout();
+    }
+
+    public int getPoolStatementCacheSize() {
+        return snapshot.getPoolStatementCacheSize();
+    }
+
+    public int getExecutorThreads() {
+        return snapshot.getExecutorThreads();
+    }
+
+    public int getExecutorQueueCapacity() {
+        return snapshot.getExecutorQueueCapacity();
+    }
+
+    public long getExecutorBackpressureTimeout() {
+        return snapshot.getExecutorBackpressureTimeout();
+    }
+
+    public long getExecutorShutdownTimeout() {
+        return snapshot.getExecutorShutdownTimeout();
+    }
+
+    public boolean isWriteBehindEnabled() {
+        return snapshot.isWriteBehindEnabled();
+    }
+
+    public long getWriteBehindFlushInterval() {
+        return snapshot.getWriteBehindFlushInterval();
+    }
+
+    public int getWriteBehindBatchSize() {
+        return snapshot.getWriteBehindBatchSize();
+    }
+
+    public long getSlowQueryThreshold() {
+        return snapshot.getSlowQueryThreshold();
+    }
+
+    public long getPermissionGroupCacheTtl() {
+        return snapshot.getPermissionGroupCacheTtl();
     }
 
     public int getFullModeLengthLimit() {
-        return config.getInt("length-limits.full-mode", 50);
+        return snapshot.getFullModeLengthLimit();
     }
 
     public int getPrefixLengthLimit() {
-        return config.getInt("length-limits.prefix", 20);
+        return snapshot.getPrefixLengthLimit();
     }
 
     public int getSuffixLengthLimit() {
-        return config.getInt("length-limits.suffix", 20);
+        return snapshot.getSuffixLengthLimit();
     }
 
     public boolean isPlaceholdersEnabled() {
-        return config.getBoolean("placeholders.enabled", true);
+        return snapshot.isPlaceholdersEnabled();
+    }
+
+    public int getPlaceholderCacheMaxSize() {
+        return snapshot.getPlaceholderCacheMaxSize();
+    }
+
+    public long getPlaceholderCacheTtl() {
+        return snapshot.getPlaceholderCacheTtl();
     }
 
     public String getDefaultQuitMessage() {
-        return config.getString("default-quit-message", "&e%player_name% 离开了服务器");
+        return snapshot.getDefaultQuitMessage();
     }
 
     public String getDefaultQuitPrefix() {
-        return config.getString("default-quit-prefix", "&e再见 ");
+        return snapshot.getDefaultQuitPrefix();
     }
 
     public String getDefaultQuitSuffix() {
-        return config.getString("default-quit-suffix", " 离开了服务器！");
+        return snapshot.getDefaultQuitSuffix();
     }
 
     public boolean shouldHideDefaultQuitMessage() {
-        return config.getBoolean("hide-default-quit-message", true);
+        return snapshot.shouldHideDefaultQuitMessage();
     }
 
     public int getMaxMessageLength() {
-        // Return the maximum length based on the message mode
-        if (isPrefixSuffixMode()) {
-            // For prefix-suffix mode, use the larger of prefix or suffix limit
-            return Math.max(getPrefixLengthLimit(), getSuffixLengthLimit());
-        } else {
-            // For full mode, use the full mode limit
-            return getFullModeLengthLimit();
-        }
+        return snapshot.getMaxMessageLength();
     }
-}
\ No newline at end of file
+}
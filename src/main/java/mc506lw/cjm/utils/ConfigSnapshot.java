@@ -0,0 +1,407 @@
+package mc506lw.cjm.utils;
+
+import org.bukkit.configuration.file.FileConfiguration;
+
+/**
+ * Immutable, typed view of config.yml
+ * 不可变的配置快照
+ * 加载或重载配置时一次性读取所有配置项，之后的读取都是普通字段访问，不再查找YAML树
+ */
+public final class ConfigSnapshot {
+    private final String messageMode;
+    private final String defaultJoinMessage;
+    private final String defaultJoinPrefix;
+    private final String defaultJoinSuffix;
+    private final boolean hideDefaultJoinMessage;
+    private final String databaseType;
+    private final String sqliteFile;
+    private final boolean sqliteWalEnabled;
+    private final String sqliteSynchronous;
+    private final int sqliteCacheSize;
+    private final long sqliteMmapSize;
+    private final int sqliteBusyTimeout;
+    private final int sqliteMaxConnections;
+    private final int sqliteMaintenanceInterval;
+    private final String mysqlHost;
+    private final int mysqlPort;
+    private final String mysqlDatabase;
+    private final String mysqlUsername;
+    private final String mysqlPassword;
+    private final String mysqlTable;
+    private final int poolMinSize;
+    private final int poolMaxSize;
+    private final long poolConnectionTimeout;
+    private final long poolIdleTimeout;
+    private final long poolLeakDetectionThreshold;
+    private final int poolValidationTimeout;
+    private final int poolStatementCacheSize;
+    private final int executorThreads;
+    private final int executorQueueCapacity;
+    private final long executorBackpressureTimeout;
+    private final long executorShutdownTimeout;
+    private final boolean writeBehindEnabled;
+    private final long writeBehindFlushInterval;
+    private final int writeBehindBatchSize;
+    private final long slowQueryThreshold;
+    private final int fullModeLengthLimit;
+    private final int prefixLengthLimit;
+    private final int suffixLengthLimit;
+    private final boolean placeholdersEnabled;
+    private final int placeholderCacheMaxSize;
+    private final long placeholderCacheTtl;
+    private final String defaultQuitMessage;
+    private final String defaultQuitPrefix;
+    private final String defaultQuitSuffix;
+    private final boolean hideDefaultQuitMessage;
+    private final boolean fullMode;
+    private final boolean prefixSuffixMode;
+    private final boolean broadcastRegionDelivery;
+    private final boolean broadcastQueueEnabled;
+    private final int broadcastQueueMaxMessages;
+    private final long broadcastQueueMaxMicros;
+    private final boolean joinStormEnabled;
+    private final int joinStormThreshold;
+    private final int joinStormWindow;
+    private final int joinStormDigestInterval;
+    private final int joinStormMaxNames;
+    private final String joinStormDigestMessage;
+    private final String joinStormMorePlayers;
+    private final PermissionGroupIndex permissionGroups;
+    private final long permissionGroupCacheTtl;
+    private final MessageTemplate defaultJoinMessageTemplate;
+    private final MessageTemplate defaultJoinPrefixTemplate;
+    private final MessageTemplate defaultJoinSuffixTemplate;
+
+    public ConfigSnapshot(FileConfiguration config) {
+        this.messageMode = config.getString("message-mode", "full");
+        this.defaultJoinMessage = config.getString("default-join-message", "&e%player_name% 加入了服务器");
+        this.defaultJoinPrefix = config.getString("default-join-prefix", "&e欢迎 ");
+        this.defaultJoinSuffix = config.getString("default-join-suffix", " 加入服务器！");
+        this.hideDefaultJoinMessage = config.getBoolean("hide-default-join-message", true);
+        this.databaseType = config.getString("database.type", "sqlite");
+        this.sqliteFile = config.getString("database.sqlite.file", "joinmessages.db");
+        this.sqliteWalEnabled = config.getBoolean("database.sqlite.wal", true);
+        this.sqliteSynchronous = config.getString("database.sqlite.synchronous", "NORMAL");
+        this.sqliteCacheSize = config.getInt("database.sqlite.cache-size", 16384);
+        this.sqliteMmapSize = config.getLong("database.sqlite.mmap-size", 134217728L);
+        this.sqliteBusyTimeout = config.getInt("database.sqlite.busy-timeout", 5000);
+        this.sqliteMaxConnections = config.getInt("database.sqlite.max-connections", 4);
+        this.sqliteMaintenanceInterval = config.getInt("database.sqlite.maintenance-interval", 60);
+        this.mysqlHost = config.getString("database.mysql.host", "localhost");
+        this.mysqlPort = config.getInt("database.mysql.port", 3306);
+        this.mysqlDatabase = config.getString("database.mysql.database", "minecraft");
+        this.mysqlUsername = config.getString("database.mysql.username", "root");
+        this.mysqlPassword = config.getString("database.mysql.password", "password");
+        this.mysqlTable = config.getString("database.mysql.table", "joinmessages");
+        this.poolMinSize = config.getInt("database.pool.min-size", 2);
+        this.poolMaxSize = config.getInt("database.pool.max-size", 10);
+        this.poolConnectionTimeout = config.getLong("database.pool.connection-timeout", 5000);
+        this.poolIdleTimeout = config.getLong("database.pool.idle-timeout", 600000);
+        this.poolLeakDetectionThreshold = config.getLong("database.pool.leak-detection-threshold", 0);
+        this.poolValidationTimeout = config.getInt("database.pool.validation-timeout", 3);
+        this.poolStatementCacheSize = config.getInt("database.pool.statement-cache-size", 64);
+        this.executorThreads = config.getInt("database.executor.threads", 2);
+        this.executorQueueCapacity = config.getInt("database.executor.queue-capacity", 1000);
+        this.executorBackpressureTimeout = config.getLong("database.executor.backpressure-timeout", 1000);
+        this.executorShutdownTimeout = config.getLong("database.executor.shutdown-timeout", 10000);
+        this.writeBehindEnabled = config.getBoolean("database.write-behind.enabled", true);
+        this.writeBehindFlushInterval = config.getLong("database.write-behind.flush-interval", 1000);
+        this.writeBehindBatchSize = config.getInt("database.write-behind.batch-size", 100);
+        this.slowQueryThreshold = config.getLong("database.slow-query-threshold", 200);
+        this.fullModeLengthLimit = config.getInt("length-limits.full-mode", 50);
+        this.prefixLengthLimit = config.getInt("length-limits.prefix", 20);
+        this.suffixLengthLimit = config.getInt("length-limits.suffix", 20);
+        this.placeholdersEnabled = config.getBoolean("placeholders.enabled", true);
+        this.placeholderCacheMaxSize = config.getInt("placeholders.cache.max-size", 1000);
+        this.placeholderCacheTtl = config.getLong("placeholders.cache.ttl", 60);
+        this.defaultQuitMessage = config.getString("default-quit-message", "&e%player_name% 离开了服务器");
+        this.defaultQuitPrefix = config.getString("default-quit-prefix", "&e再见 ");
+        this.defaultQuitSuffix = config.getString("default-quit-suffix", " 离开了服务器！");
+        this.hideDefaultQuitMessage = config.getBoolean("hide-default-quit-message", true);
+        this.fullMode = "full".equalsIgnoreCase(messageMode);
+        this.prefixSuffixMode = "prefix_suffix".equalsIgnoreCase(messageMode);
+        this.broadcastRegionDelivery = config.getBoolean("broadcast.region-delivery", true);
+        this.broadcastQueueEnabled = config.getBoolean("broadcast.queue.enabled", true);
+        this.broadcastQueueMaxMessages = config.getInt("broadcast.queue.max-messages-per-tick", 5);
+        this.broadcastQueueMaxMicros = config.getLong("broadcast.queue.max-micros-per-tick", 1000);
+        this.joinStormEnabled = config.getBoolean("join-storm.enabled", false);
+        this.joinStormThreshold = config.getInt("join-storm.threshold", 20);
+        this.joinStormWindow = config.getInt("join-storm.window", 10);
+        this.joinStormDigestInterval = config.getInt("join-storm.digest-interval", 5);
+        this.joinStormMaxNames = config.getInt("join-storm.max-names", 10);
+        this.joinStormDigestMessage = config.getString("join-storm.digest-message", "&e%count% 名玩家加入了服务器: &f%players%");
+        this.joinStormMorePlayers = config.getString("join-storm.more-players", " &e等%more%人");
+        this.permissionGroups = new PermissionGroupIndex(config);
+        this.permissionGroupCacheTtl = config.getLong("permission-group-cache-ttl", 10);
+        this.defaultJoinMessageTemplate = MessageTemplate.compile(defaultJoinMessage, MessageTemplate.Mode.FORMAT);
+        this.defaultJoinPrefixTemplate = MessageTemplate.compile(defaultJoinPrefix, MessageTemplate.Mode.FORMAT);
+        this.defaultJoinSuffixTemplate = MessageTemplate.compile(defaultJoinSuffix, MessageTemplate.Mode.FORMAT);
+    }
+
+    public String getMessageMode() {
+        return messageMode;
+    }
+
+    public String getDefaultJoinMessage() {
+        return defaultJoinMessage;
+    }
+
+    public String getDefaultJoinPrefix() {
+        return defaultJoinPrefix;
+    }
+
+    public String getDefaultJoinSuffix() {
+        return defaultJoinSuffix;
+    }
+
+    public boolean shouldHideDefaultJoinMessage() {
+        return hideDefaultJoinMessage;
+    }
+
+    public String getDatabaseType() {
+        return databaseType;
+    }
+
+    public String getSQLiteFile() {
+        return sqliteFile;
+    }
+
+    public boolean isSQLiteWalEnabled() {
+        return sqliteWalEnabled;
+    }
+
+    public String getSQLiteSynchronous() {
+        return sqliteSynchronous;
+    }
+
+    public int getSQLiteCacheSize() {
+        return sqliteCacheSize;
+    }
+
+    public long getSQLiteMmapSize() {
+        return sqliteMmapSize;
+    }
+
+    public int getSQLiteBusyTimeout() {
+        return sqliteBusyTimeout;
+    }
+
+    public int getSQLiteMaxConnections() {
+        return sqliteMaxConnections;
+    }
+
+    public int getSQLiteMaintenanceInterval() {
+        return sqliteMaintenanceInterval;
+    }
+
+    public String getMySQLHost() {
+        return mysqlHost;
+    }
+
+    public int getMySQLPort() {
+        return mysqlPort;
+    }
+
+    public String getMySQLDatabase() {
+        return mysqlDatabase;
+    }
+
+    public String getMySQLUsername() {
+        return mysqlUsername;
+    }
+
+    public String getMySQLPassword() {
+        return mysqlPassword;
+    }
+
+    public String getMySQLTable() {
+        return mysqlTable;
+    }
+
+    public int getPoolMinSize() {
+        return poolMinSize;
+    }
+
+    public int getPoolMaxSize() {
+        return poolMaxSize;
+    }
+
+    public long getPoolConnectionTimeout() {
+        return poolConnectionTimeout;
+    }
+
+    public long getPoolIdleTimeout() {
+        return poolIdleTimeout;
+    }
+
+    public long getPoolLeakDetectionThreshold() {
+        return poolLeakDetectionThreshold;
+    }
+
+    public int getPoolValidationTimeout() {
+        return poolValidationTimeout;
+    }
+
+    public int getPoolStatementCacheSize() {
+        return poolStatementCacheSize;
+    }
+
+    public int getExecutorThreads() {
+        return executorThreads;
+    }
+
+    public int getExecutorQueueCapacity() {
+        return executorQueueCapacity;
+    }
+
+    public long getExecutorBackpressureTimeout() {
+        return executorBackpressureTimeout;
+    }
+
+    public long getExecutorShutdownTimeout() {
+        return executorShutdownTimeout;
+    }
+
+    public boolean isWriteBehindEnabled() {
+        return writeBehindEnabled;
+    }
+
+    public long getWriteBehindFlushInterval() {
+        return writeBehindFlushInterval;
+    }
+
+    public int getWriteBehindBatchSize() {
+        return writeBehindBatchSize;
+    }
+
+    public long getSlowQueryThreshold() {
+        return slowQueryThreshold;
+    }
+
+    public int getFullModeLengthLimit() {
+        return fullModeLengthLimit;
+    }
+
+    public int getPrefixLengthLimit() {
+        return prefixLengthLimit;
+    }
+
+    public int getSuffixLengthLimit() {
+        return suffixLengthLimit;
+    }
+
+    public boolean isPlaceholdersEnabled() {
+        return placeholdersEnabled;
+    }
+
+    public int getPlaceholderCacheMaxSize() {
+        return placeholderCacheMaxSize;
+    }
+
+    public long getPlaceholderCacheTtl() {
+        return placeholderCacheTtl;
+    }
+
+    public String getDefaultQuitMessage() {
+        return defaultQuitMessage;
+    }
+
+    public String getDefaultQuitPrefix() {
+        return defaultQuitPrefix;
+    }
+
+    public String getDefaultQuitSuffix() {
+        return defaultQuitSuffix;
+    }
+
+    public boolean shouldHideDefaultQuitMessage() {
+        return hideDefaultQuitMessage;
+    }
+
+    public boolean isFullMode() {
+        return fullMode;
+    }
+
+    public boolean isPrefixSuffixMode() {
+        return prefixSuffixMode;
+    }
+
+    public boolean isBroadcastRegionDelivery() {
+        return broadcastRegionDelivery;
+    }
+
+    public boolean isBroadcastQueueEnabled() {
+        return broadcastQueueEnabled;
+    }
+
+    public int getBroadcastQueueMaxMessages() {
+        return broadcastQueueMaxMessages;
+    }
+
+    public long getBroadcastQueueMaxMicros() {
+        return broadcastQueueMaxMicros;
+    }
+
+    public boolean isJoinStormEnabled() {
+        return joinStormEnabled;
+    }
+
+    public int getJoinStormThreshold() {
+        return joinStormThreshold;
+    }
+
+    public int getJoinStormWindow() {
+        return joinStormWindow;
+    }
+
+    public int getJoinStormDigestInterval() {
+        return joinStormDigestInterval;
+    }
+
+    public int getJoinStormMaxNames() {
+        return joinStormMaxNames;
+    }
+
+    public String getJoinStormDigestMessage() {
+        return joinStormDigestMessage;
+    }
+
+    public String getJoinStormMorePlayers() {
+        return joinStormMorePlayers;
+    }
+
+    /**
+     * Permission groups sorted by priority, compiled when the config was loaded
+     * 加载配置时按优先级排序并预编译的权限组
+     */
+    public PermissionGroupIndex getPermissionGroups() {
+        return permissionGroups;
+    }
+
+    public long getPermissionGroupCacheTtl() {
+        return permissionGroupCacheTtl;
+    }
+
+    public MessageTemplate getDefaultJoinMessageTemplate() {
+        return defaultJoinMessageTemplate;
+    }
+
+    public MessageTemplate getDefaultJoinPrefixTemplate() {
+        return defaultJoinPrefixTemplate;
+    }
+
+    public MessageTemplate getDefaultJoinSuffixTemplate() {
+        return defaultJoinSuffixTemplate;
+    }
+
+    public int getMaxMessageLength() {
+        // Return the maximum length based on the message mode
+        if (prefixSuffixMode) {
+            // For prefix-suffix mode, use the larger of prefix or suffix limit
+            return Math.max(prefixLengthLimit, suffixLengthLimit);
+        } else {
+            // For full mode, use the full mode limit
+            return fullModeLengthLimit;
+        }
+    }
+}
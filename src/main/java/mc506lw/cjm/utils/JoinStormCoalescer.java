@@ -0,0 +1,180 @@
+package mc506lw.cjm.utils;
+
+import mc506lw.cjm.CustomJoinMessage;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coalesces join messages into digest lines during a join storm
+ * 加入风暴期间把加入消息合并为摘要消息
+ * 滑动窗口内的加入次数超过阈值时进入风暴模式，之后的加入消息不再单独渲染和广播，
+ * 只记录玩家名，定期合并为一条摘要广播；窗口内的加入次数降到阈值一半以下时退出风暴模式
+ */
+public class JoinStormCoalescer {
+    // 检查摘要和风暴结束的间隔（tick）
+    private static final long CHECK_PERIOD_TICKS = 20L;
+
+    private final CustomJoinMessage plugin;
+
+    // 以下字段都需要持有this的锁访问
+    // 滑动窗口内每次加入的时间（毫秒），按时间顺序排列
+    private final ArrayDeque<Long> joinTimes = new ArrayDeque<>();
+    // 等待合并到下一条摘要的玩家名
+    private final List<String> pendingNames = new ArrayList<>();
+    private boolean storming;
+    private long lastDigestTime;
+    // 当前这次风暴中被合并的消息数和摘要数，用于风暴结束时报告
+    private int stormSuppressed;
+    private int stormDigests;
+
+    // 插件启动以来的总数
+    private final LongAdder suppressed = new LongAdder();
+    private final LongAdder digests = new LongAdder();
+
+    public JoinStormCoalescer(CustomJoinMessage plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Start the periodic digest task
+     * 启动定期发送摘要的任务
+     */
+    public void start() {
+        plugin.getSchedulerUtils().runTaskTimerAsynchronously(this::tick, CHECK_PERIOD_TICKS, CHECK_PERIOD_TICKS);
+    }
+
+    /**
+     * Record a join and decide whether its message goes into the digest
+     * 记录一次加入，并判断该玩家的加入消息是否合并到摘要中
+     * @param playerName the joining player's name | 加入的玩家名
+     * @return true if the message is coalesced and must not be broadcast | 消息已合并、不应单独广播时返回true
+     */
+    public boolean recordJoin(String playerName) {
+        ConfigSnapshot config = plugin.getConfigManager().getSnapshot();
+        if (!config.isJoinStormEnabled()) {
+            return false;
+        }
+
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            expireJoins(now, config);
+            joinTimes.addLast(now);
+
+            if (!storming && joinTimes.size() > config.getJoinStormThreshold()) {
+                storming = true;
+                lastDigestTime = now;
+                stormSuppressed = 0;
+                stormDigests = 0;
+                plugin.getLogger().info("Join storm detected: more than " + config.getJoinStormThreshold()
+                        + " joins in " + config.getJoinStormWindow() + " seconds, join messages are sent as digests");
+            }
+            if (!storming) {
+                return false;
+            }
+
+            pendingNames.add(playerName);
+            stormSuppressed++;
+            suppressed.increment();
+            return true;
+        }
+    }
+
+    /**
+     * 定期任务：到达摘要间隔时发送摘要，加入速度降下来后发送剩余的玩家并退出风暴模式
+     */
+    private void tick() {
+        ConfigSnapshot config = plugin.getConfigManager().getSnapshot();
+        long now = System.currentTimeMillis();
+        String digest = null;
+        String report = null;
+
+        synchronized (this) {
+            if (!storming) {
+                return;
+            }
+
+            expireJoins(now, config);
+            // 重载后关闭了该功能时也立即结束
+            boolean ending = !config.isJoinStormEnabled() || joinTimes.size() <= config.getJoinStormThreshold() / 2;
+            if (!pendingNames.isEmpty() && (ending || now - lastDigestTime >= config.getJoinStormDigestInterval() * 1000L)) {
+                digest = buildDigest(config);
+                pendingNames.clear();
+                lastDigestTime = now;
+                stormDigests++;
+                digests.increment();
+            }
+            if (ending) {
+                storming = false;
+                report = "Join storm ended: " + stormSuppressed + " join messages were sent as " + stormDigests + " digests";
+            }
+        }
+
+        if (digest != null) {
+            plugin.getBroadcastQueue().enqueue(digest);
+        }
+        if (report != null) {
+            plugin.getLogger().info(report);
+        }
+    }
+
+    /**
+     * 移除滑动窗口之外的加入记录，调用时需持有this的锁
+     */
+    private void expireJoins(long now, ConfigSnapshot config) {
+        long windowStart = now - config.getJoinStormWindow() * 1000L;
+        while (!joinTimes.isEmpty() && joinTimes.peekFirst() <= windowStart) {
+            joinTimes.pollFirst();
+        }
+    }
+
+    /**
+     * 用等待中的玩家名生成摘要，超过显示上限的玩家只显示数量，调用时需持有this的锁
+     */
+    private String buildDigest(ConfigSnapshot config) {
+        int count = pendingNames.size();
+        int shown = Math.min(count, Math.max(1, config.getJoinStormMaxNames()));
+
+        StringBuilder players = new StringBuilder();
+        for (int i = 0; i < shown; i++) {
+            if (i > 0) {
+                players.append(", ");
+            }
+            players.append(pendingNames.get(i));
+        }
+        if (shown < count) {
+            players.append(config.getJoinStormMorePlayers().replace("%more%", String.valueOf(count - shown)));
+        }
+
+        String message = config.getJoinStormDigestMessage()
+                .replace("%count%", String.valueOf(count))
+                .replace("%players%", players);
+        return ColorTranslator.translate(message);
+    }
+
+    /**
+     * Whether join messages are currently coalesced
+     * 当前是否处于风暴模式
+     */
+    public synchronized boolean isStorming() {
+        return storming;
+    }
+
+    /**
+     * Join messages coalesced into digests since the plugin was enabled
+     * 插件启动以来被合并到摘要中的加入消息数
+     */
+    public long getSuppressedCount() {
+        return suppressed.sum();
+    }
+
+    /**
+     * Digest lines broadcast since the plugin was enabled
+     * 插件启动以来发送的摘要数
+     */
+    public long getDigestCount() {
+        return digests.sum();
+    }
+}
@@ -0,0 +1,81 @@
+package mc506lw.cjm.utils;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Latency histograms for each stage of the join and quit pipeline
+ * 加入和退出消息处理流程中每个阶段的延迟直方图
+ */
+public class LatencyStats {
+
+    /**
+     * Measured stages, in pipeline order
+     * 统计的阶段，按处理顺序排列
+     */
+    public enum Stage {
+        /** From PlayerJoinEvent until the join message is broadcast | 从PlayerJoinEvent到加入消息广播 */
+        JOIN_TOTAL("join-total"),
+        /** From PlayerQuitEvent until the quit message is broadcast | 从PlayerQuitEvent到退出消息广播 */
+        QUIT_TOTAL("quit-total"),
+        /** Time a database task waits in the executor queue | 数据库任务在执行器队列中的等待时间 */
+        DB_QUEUE("db-queue"),
+        /** Time a database task runs | 数据库任务的执行时间 */
+        DB_QUERY("db-query"),
+        /** Resolving the player's permission group | 解析玩家的权限组 */
+        GROUP_RESOLVE("group-resolve"),
+        /** Rendering the message template and color codes | 渲染消息模板和颜色代码 */
+        RENDER("render"),
+        /** PlaceholderAPI replacement | PlaceholderAPI占位符替换 */
+        PLACEHOLDERS("placeholders"),
+        /** Time a message waits in the broadcast queue | 消息在广播队列中的等待时间 */
+        BROADCAST_QUEUE("broadcast-queue"),
+        /** Handing the message to the scheduler or sending it | 把消息交给调度器或发送消息的耗时 */
+        BROADCAST("broadcast");
+
+        private final String displayName;
+
+        Stage(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    private final Map<Stage, LatencyHistogram> histograms = new EnumMap<>(Stage.class);
+
+    public LatencyStats() {
+        for (Stage stage : Stage.values()) {
+            histograms.put(stage, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * Record the time since startNanos for a stage
+     * 记录从startNanos到现在的耗时
+     * @param startNanos value of System.nanoTime() when the stage started | 阶段开始时的System.nanoTime()
+     */
+    public void recordSince(Stage stage, long startNanos) {
+        histograms.get(stage).record(System.nanoTime() - startNanos);
+    }
+
+    public void record(Stage stage, long nanos) {
+        histograms.get(stage).record(nanos);
+    }
+
+    public LatencyHistogram.Snapshot snapshot(Stage stage) {
+        return histograms.get(stage).snapshot();
+    }
+
+    /**
+     * Clear all stages
+     * 清空所有阶段的记录
+     */
+    public void reset() {
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+    }
+}
@@ -1,14 +1,11 @@
 package mc506lw.cjm.utils;
 
-import org.bukkit.ChatColor;
-
-import java.util.regex.Pattern;
-
 /**
  * 工具类，用于处理消息长度计算（不包含颜色代码）
+ * 长度计算、颜色代码检测和截断都基于ColorTranslator.codeLengthAt识别颜色代码，每个操作只扫描一次文本，不使用正则表达式
  */
 public class MessageLengthUtil {
-    
+
     /**
      * 计算字符串中非颜色代码的字符数
      * @param text 要计算的文本
@@ -18,14 +15,10 @@ public class MessageLengthUtil {
         if (text == null) {
             return 0;
         }
-        
-        // 移除所有颜色代码（&a, &b, &c...以及&l, &m, &n, &o, &r, &#RRGGBB, &#RGB）
-        String strippedText = text.replaceAll("(?i)&([0-9a-fk-or])|&#([0-9a-f]{6})|&#([0-9a-f]{3})", "");
-        
-        // 返回移除颜色代码后的字符数
-        return strippedText.length();
+
+        return countVisible(text, Integer.MAX_VALUE);
     }
-    
+
     /**
      * 检查消息是否超过长度限制
      * @param text 要检查的文本
@@ -37,10 +30,14 @@ public class MessageLengthUtil {
             // 如果限制为-1，表示无限制
             return false;
         }
-        
-        return getLengthWithoutColorCodes(text) > maxLength;
+        if (text == null) {
+            return false;
+        }
+
+        // 数到超过限制即可停止
+        return countVisible(text, maxLength) > maxLength;
     }
-    
+
     /**
      * 检查字符串是否包含颜色代码
      * @param text 要检查的文本
@@ -50,27 +47,21 @@ public class MessageLengthUtil {
         if (text == null) {
             return false;
         }
-        
-        // 检查是否包含标准颜色代码 (&a, &b, &c...以及&l, &m, &n, &o, &r)
-        if (text.matches("(?i).*&([0-9a-fk-or]).*")) {
-            return true;
-        }
-        
-        // 检查是否包含十六进制颜色代码 (&#RRGGBB, &#RGB)
-        if (text.matches("(?i).*&#[0-9a-f]{3}.*") || text.matches("(?i).*&#[0-9a-f]{6}.*")) {
-            return true;
-        }
-        
-        // 检查是否包含ChatColor颜色代码 (§a, §b, §c...以及§l, §m, §n, §o, §r)
-        if (text.matches("(?i).*§([0-9a-fk-or]).*")) {
-            return true;
+
+        int length = text.length();
+        for (int i = 0; i < length - 1; i++) {
+            // 标准颜色代码 (&a, &l...)、十六进制颜色代码 (&#RRGGBB, &#RGB)、ChatColor颜色代码 (§a, §l...)
+            if (isColorCode(text, i, ColorTranslator.codeLengthAt(text, i))) {
+                return true;
+            }
         }
-        
+
         return false;
     }
-    
+
     /**
      * 截断消息到指定长度（不包含颜色代码）
+     * 颜色代码保持完整，紧跟在最后一个保留字符之后的颜色代码也会保留
      * @param text 要截断的文本
      * @param maxLength 最大长度
      * @return 截断后的文本
@@ -79,66 +70,79 @@ public class MessageLengthUtil {
         if (text == null || maxLength < 0) {
             return text;
         }
-        
-        // 如果消息未超过长度限制，直接返回
-        if (!exceedsLengthLimit(text, maxLength)) {
-            return text;
-        }
-        
-        // 构建结果字符串
-        StringBuilder result = new StringBuilder();
-        int nonColorCharCount = 0;
-        boolean inColorCode = false;
-        boolean inHexColorCode = false;
-        int hexColorCodeLength = 0;
-        
-        for (int i = 0; i < text.length(); i++) {
-            char c = text.charAt(i);
-            
-            // 检查颜色代码
-            if (c == '&' && i + 1 < text.length()) {
-                char nextChar = text.charAt(i + 1);
-                if (nextChar == '#') {
-                    // 十六进制颜色代码开始
-                    inHexColorCode = true;
-                    hexColorCodeLength = 0;
-                    result.append(c);
-                    continue;
-                } else if (Pattern.matches("[0-9a-fk-orA-FK-OR]", String.valueOf(nextChar))) {
-                    // 标准颜色代码
-                    inColorCode = true;
-                    result.append(c);
-                    continue;
-                }
-            }
-            
-            if (inColorCode) {
-                result.append(c);
-                inColorCode = false;
+
+        int length = text.length();
+        int visible = 0;
+        int i = 0;
+        while (i < length) {
+            int codeLength = codeLengthAt(text, i);
+            if (codeLength > 0) {
+                i += codeLength;
                 continue;
             }
-            
-            if (inHexColorCode) {
-                result.append(c);
-                hexColorCodeLength++;
-                
-                // 十六进制颜色代码格式为 &#RRGGBB 或 &#RGB
-                if ((hexColorCodeLength == 3 && i + 1 < text.length() && text.charAt(i + 1) != ' ') || 
-                    hexColorCodeLength == 6) {
-                    inHexColorCode = false;
-                }
+
+            // 非颜色代码字符
+            if (visible == maxLength) {
+                return text.substring(0, i);
+            }
+            visible++;
+            i++;
+        }
+
+        // 未超过长度限制，直接返回
+        return text;
+    }
+
+    /**
+     * 统计非颜色代码的字符数，超过limit后提前停止
+     * @param text 要统计的文本
+     * @param limit 统计上限
+     * @return 非颜色代码的字符数，超过limit时返回limit + 1
+     */
+    private int countVisible(String text, int limit) {
+        int length = text.length();
+        int visible = 0;
+        int i = 0;
+        while (i < length) {
+            int codeLength = codeLengthAt(text, i);
+            if (codeLength > 0) {
+                i += codeLength;
                 continue;
             }
-            
-            // 非颜色代码字符
-            if (nonColorCharCount < maxLength) {
-                result.append(c);
-                nonColorCharCount++;
-            } else {
-                break;
+
+            if (visible == limit) {
+                return limit + 1;
             }
+            visible++;
+            i++;
+        }
+        return visible;
+    }
+
+    /**
+     * 获取从index开始、不计入长度的颜色代码长度
+     * 只有&开头的代码不计入长度，§代码按普通字符计算
+     * @param text 要检查的文本
+     * @param index 要检查的位置
+     * @return 颜色代码长度，不是颜色代码时为0
+     */
+    private static int codeLengthAt(String text, int index) {
+        if (text.charAt(index) != ColorTranslator.ALT_COLOR_CHAR) {
+            return 0;
+        }
+        int codeLength = ColorTranslator.codeLengthAt(text, index);
+        return isColorCode(text, index, codeLength) ? codeLength : 0;
+    }
+
+    /**
+     * ColorTranslator也识别&x和§x（十六进制颜色的前缀），消息长度规则不把它们当作颜色代码
+     * @param codeLength ColorTranslator.codeLengthAt在index处的返回值
+     */
+    private static boolean isColorCode(String text, int index, int codeLength) {
+        if (codeLength == 2) {
+            char code = text.charAt(index + 1);
+            return code != 'x' && code != 'X';
         }
-        
-        return result.toString();
+        return codeLength > 0;
     }
-}
\ No newline at end of file
+}
@@ -1,19 +1,36 @@
 package mc506lw.cjm.utils;
 
 import mc506lw.cjm.CustomJoinMessage;
-import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 public class MessageManager {
+    // Maximum number of compiled player templates kept per mode
+    private static final int MAX_CACHED_TEMPLATES = 1024;
+
     private final CustomJoinMessage plugin;
     private final PermissionUtils permissionUtils;
     private final PlaceholderUtil placeholderUtil;
+    // Compiled templates of player messages, keyed by template text, least recently used evicted first
+    private final Map<MessageTemplate.Mode, Map<String, MessageTemplate>> templates = new EnumMap<>(MessageTemplate.Mode.class);
 
     public MessageManager(CustomJoinMessage plugin) {
         this.plugin = plugin;
         this.permissionUtils = plugin.getPermissionUtils();
         this.placeholderUtil = plugin.getPlaceholderUtil();
+
+        for (MessageTemplate.Mode mode : MessageTemplate.Mode.values()) {
+            templates.put(mode, new LinkedHashMap<String, MessageTemplate>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, MessageTemplate> eldest) {
+                    return size() > MAX_CACHED_TEMPLATES;
+                }
+            });
+        }
     }
 
     /**
@@ -26,13 +43,8 @@ public class MessageManager {
     public String processColors(String message) {
         if (message == null) return "";
         
-        // Support for RGB colors (1.16+) - &#RRGGBB format
-        message = message.replaceAll("&#([0-9a-fA-F])([0-9a-fA-F])([0-9a-fA-F])([0-9a-fA-F])([0-9a-fA-F])([0-9a-fA-F])", "§x§$1§$2§$3§$4§$5§$6");
-        
-        // Translate standard color codes (&a, &b, etc.) and &x&r&r&g&g&b&b RGB format
-        message = ChatColor.translateAlternateColorCodes('&', message);
-        
-        return message;
+        // Translate &#RRGGBB, &#RGB and standard color codes (&a, &b, etc.) in a single pass
+        return ColorTranslator.translate(message);
     }
 
     public String getMessage(String path) {
@@ -65,6 +77,86 @@ public class MessageManager {
         return message;
     }
     
+    /**
+     * Get the compiled template for a player message, compiling it on first use
+     * 获取玩家消息的编译模板，首次使用时编译并缓存
+     * 
+     * @param message The message text, may be null
+     * @param mode How the message is rendered
+     * @return The compiled template, or null if message is null
+     */
+    public MessageTemplate getTemplate(String message, MessageTemplate.Mode mode) {
+        if (message == null) {
+            return null;
+        }
+        
+        Map<String, MessageTemplate> cache = templates.get(mode);
+        synchronized (cache) {
+            MessageTemplate template = cache.get(message);
+            if (template == null) {
+                template = MessageTemplate.compile(message, mode);
+                cache.put(message, template);
+            }
+            return template;
+        }
+    }
+    
+    /**
+     * Render a template for a player, without PlaceholderAPI placeholders
+     * 为玩家渲染模板，不替换PlaceholderAPI占位符
+     * 
+     * @param template The compiled template, may be null
+     * @param playerName The player's name
+     * @return The rendered message, or null if template is null
+     */
+    public String render(MessageTemplate template, String playerName) {
+        if (template == null) {
+            return null;
+        }
+        if (template.isCompiled()) {
+            return template.render(playerName);
+        }
+        
+        // The player name may form color codes with the text before it, render the original way
+        String message = template.getSource();
+        switch (template.getMode()) {
+            case COLORS:
+                return processColors(message);
+            case QUIT:
+                message = plugin.getPlaceholderUtil().replacePlaceholders(playerName, message);
+                message = formatMessage(message, playerName);
+                return processQuitMessageColors(message, playerName);
+            default:
+                return formatMessage(message, playerName);
+        }
+    }
+    
+    /**
+     * Render a template for an online player, including PlaceholderAPI placeholders
+     * 为在线玩家渲染模板，包括PlaceholderAPI占位符
+     * 
+     * @param template The compiled template, may be null
+     * @param player The player to render the template for
+     * @param event The JFR event receiving the PlaceholderAPI time
+     * @return The rendered message, or null if template is null
+     */
+    public String render(MessageTemplate template, Player player, MessageRenderEvent event) {
+        LatencyStats stats = plugin.getLatencyStats();
+        long start = System.nanoTime();
+        String message = render(template, player.getName());
+        stats.recordSince(LatencyStats.Stage.RENDER, start);
+        if (message == null || !template.hasPlaceholders()) {
+            return message;
+        }
+        
+        start = System.nanoTime();
+        message = plugin.getPlaceholderUtil().replacePlaceholders(player, message);
+        long placeholderTime = System.nanoTime() - start;
+        stats.record(LatencyStats.Stage.PLACEHOLDERS, placeholderTime);
+        event.setPlaceholderTime(placeholderTime);
+        return message;
+    }
+    
     /**
      * Format a message with placeholders for a specific player
      * 为特定玩家格式化带有占位符的消息
@@ -134,17 +226,7 @@ public class MessageManager {
      * @return The message with all color codes removed
      */
     private String removeColorCodes(String message) {
-        if (message == null) return null;
-        
-        // Remove traditional color codes (&a, &b, etc.)
-        String result = message.replaceAll("&[0-9a-fA-Fk-rK-R]", "");
-        
-        // Remove hex color codes (&#RRGGBB)
-        result = result.replaceAll("&#[0-9a-fA-F]{6}", "");
-        
-        // Remove ChatColor color codes (§a, §b, etc.)
-        result = result.replaceAll("§[0-9a-fA-Fk-rK-R]", "");
-        
-        return result;
+        // Remove standard, hex and ChatColor color codes in a single pass
+        return ColorTranslator.strip(message);
     }
 }
\ No newline at end of file
@@ -0,0 +1,53 @@
+package mc506lw.cjm.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event for rendering a join or quit message
+ * 渲染加入或退出消息的JFR事件
+ * 只有在JFR记录中启用该事件时才会提交，未记录时只有创建事件对象和设置字段的开销
+ */
+@Name("mc506lw.cjm.MessageRender")
+@Label("Message Render")
+@Category({"CustomJoinMessage", "Messages"})
+@Description("Rendering of a join or quit message by CustomJoinMessage")
+@StackTrace(false)
+public class MessageRenderEvent extends Event {
+    @Label("Message Type")
+    @Description("join or quit")
+    private String messageType;
+
+    @Label("Template Source")
+    @Description("custom, group or default")
+    private String templateSource;
+
+    @Label("Length")
+    @Description("Length of the rendered message")
+    private int length;
+
+    @Label("PlaceholderAPI Time")
+    @Timespan(Timespan.NANOSECONDS)
+    private long placeholderTime;
+
+    public void setMessageType(String messageType) {
+        this.messageType = messageType;
+    }
+
+    public void setTemplateSource(String templateSource) {
+        this.templateSource = templateSource;
+    }
+
+    public void setLength(int length) {
+        this.length = length;
+    }
+
+    public void setPlaceholderTime(long placeholderTime) {
+        this.placeholderTime = placeholderTime;
+    }
+}
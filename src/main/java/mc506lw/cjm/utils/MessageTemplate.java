@@ -0,0 +1,283 @@
+package mc506lw.cjm.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A join or quit message parsed once into constant text and player name slots
+ * 预编译的加入/退出消息模板
+ * 编译时把模板解析为文本、颜色、十六进制颜色、玩家名和外部占位符标记，
+ * 再把玩家名之间的标记合并为已处理好颜色的常量文本，渲染时只需一次StringBuilder拼接
+ */
+public final class MessageTemplate {
+    // 编译时代替玩家名的标记字符，玩家名不可能包含该字符
+    private static final char NAME = '\u0000';
+
+    /**
+     * How a template is rendered, matching the message pipelines it replaces
+     * 模板的渲染方式，对应原有的消息处理流程
+     */
+    public enum Mode {
+        /**
+         * formatMessage: &n becomes &r + name, %player_name% becomes name, then colors
+         * 完整消息：&n替换为&r加玩家名，%player_name%替换为玩家名，然后处理颜色
+         */
+        FORMAT,
+        /**
+         * processColors only, %player_name% is left to PlaceholderUtil
+         * 只处理颜色（前后缀模式的自定义消息），%player_name%之后由PlaceholderUtil替换
+         */
+        COLORS,
+        /**
+         * Offline placeholders, formatMessage, then all color codes removed
+         * 退出消息：替换离线占位符，格式化，然后移除所有颜色代码
+         */
+        QUIT
+    }
+
+    /**
+     * Token types produced by the parser
+     * 解析得到的标记类型
+     */
+    enum TokenType {
+        LITERAL, COLOR, HEX_COLOR, PLAYER_NAME, PLACEHOLDER
+    }
+
+    /**
+     * A parsed token, text is already in its rendered form
+     * 解析得到的标记，文本为渲染后的形式
+     */
+    static final class Token {
+        final TokenType type;
+        final String text;
+
+        Token(TokenType type, String text) {
+            this.type = type;
+            this.text = text;
+        }
+    }
+
+    private final String source;
+    private final Mode mode;
+    // 玩家名之间的常量文本，长度为玩家名数量加一；为null表示无法安全编译，需使用原有流程渲染
+    private final String[] parts;
+    private final int constantLength;
+    private final boolean placeholders;
+
+    private MessageTemplate(String source, Mode mode, String[] parts, boolean placeholders) {
+        this.source = source;
+        this.mode = mode;
+        this.parts = parts;
+        this.placeholders = placeholders;
+
+        int length = 0;
+        if (parts != null) {
+            for (String part : parts) {
+                length += part.length();
+            }
+        }
+        this.constantLength = length;
+    }
+
+    /**
+     * Compile a template
+     * 编译消息模板
+     * @param source template text, may be null | 模板文本，可以为null
+     * @param mode how the template is rendered | 渲染方式
+     * @return the compiled template, or null if source is null | 编译后的模板，source为null时返回null
+     */
+    public static MessageTemplate compile(String source, Mode mode) {
+        if (source == null) {
+            return null;
+        }
+        if (source.indexOf(NAME) >= 0) {
+            return new MessageTemplate(source, mode, null, true);
+        }
+
+        // 按原有流程的顺序把玩家名占位符替换为标记字符
+        String expanded;
+        switch (mode) {
+            case COLORS:
+                // %player_name%在处理颜色之后才由replacePlaceholders替换，这里保持原样
+                expanded = source;
+                break;
+            case QUIT:
+                expanded = source.replace("%player_name%", String.valueOf(NAME))
+                        .replace("%display_name%", String.valueOf(NAME))
+                        .replace("&n", "&r" + NAME);
+                break;
+            default:
+                expanded = source.replace("&n", "&r" + NAME)
+                        .replace("%player_name%", String.valueOf(NAME));
+                break;
+        }
+
+        if (!isSafe(expanded, mode)) {
+            // 玩家名可能与前面的文本组成颜色代码，只能在知道玩家名后按原有流程处理
+            return new MessageTemplate(source, mode, null, source.indexOf('%') >= 0);
+        }
+        boolean placeholders = expanded.indexOf('%') >= 0;
+
+        List<String> parts = new ArrayList<>();
+        StringBuilder constant = new StringBuilder(expanded.length());
+        for (Token token : tokenize(expanded)) {
+            if (token.type == TokenType.PLAYER_NAME) {
+                parts.add(finishConstant(constant, mode));
+                constant.setLength(0);
+            } else {
+                constant.append(token.text);
+            }
+        }
+        parts.add(finishConstant(constant, mode));
+
+        return new MessageTemplate(source, mode, parts.toArray(new String[0]), placeholders);
+    }
+
+    /**
+     * 检查每个玩家名前面的文本，玩家名以颜色字符开头时可能与前面的&、§或不完整的&#RRGGBB组成颜色代码
+     */
+    private static boolean isSafe(String expanded, Mode mode) {
+        // 退出消息插入玩家名后还会再替换一次%player_name%，玩家名可能与两侧的文本组成新的占位符
+        if (mode == Mode.QUIT && expanded.indexOf(NAME) >= 0 && expanded.indexOf('%') >= 0) {
+            return false;
+        }
+
+        for (int i = expanded.indexOf(NAME); i >= 0; i = expanded.indexOf(NAME, i + 1)) {
+            if (i == 0) {
+                continue;
+            }
+
+            char previous = expanded.charAt(i - 1);
+            if (previous == '&' || (previous == '§' && mode == Mode.QUIT)) {
+                return false;
+            }
+
+            // 向前最多查找5位十六进制数字，再看是否为&#
+            int start = i;
+            while (start > 0 && i - start < 5 && ColorTranslator.isHexDigit(expanded.charAt(start - 1))) {
+                start--;
+            }
+            if (start >= 2 && expanded.charAt(start - 1) == '#' && expanded.charAt(start - 2) == '&') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 把展开后的模板解析为标记，颜色的处理与processColors一致，由ColorTranslator识别和转换颜色代码
+     */
+    static List<Token> tokenize(String expanded) {
+        List<Token> tokens = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int length = expanded.length();
+        int i = 0;
+        while (i < length) {
+            char c = expanded.charAt(i);
+            if (c == NAME) {
+                flushLiteral(tokens, literal);
+                tokens.add(new Token(TokenType.PLAYER_NAME, ""));
+                i++;
+            } else if (c == ColorTranslator.ALT_COLOR_CHAR && ColorTranslator.codeLengthAt(expanded, i) > 0) {
+                int codeLength = ColorTranslator.codeLengthAt(expanded, i);
+                flushLiteral(tokens, literal);
+                StringBuilder code = new StringBuilder(14);
+                ColorTranslator.appendTranslated(code, expanded, i, codeLength);
+                tokens.add(new Token(codeLength > 2 ? TokenType.HEX_COLOR : TokenType.COLOR, code.toString()));
+                i += codeLength;
+            } else if (c == '%' && placeholderEnd(expanded, i) > 0) {
+                // 外部占位符原样保留，由PlaceholderAPI在渲染后统一替换
+                int end = placeholderEnd(expanded, i);
+                flushLiteral(tokens, literal);
+                tokens.add(new Token(TokenType.PLACEHOLDER, expanded.substring(i, end + 1)));
+                i = end + 1;
+            } else {
+                literal.append(c);
+                i++;
+            }
+        }
+        flushLiteral(tokens, literal);
+        return tokens;
+    }
+
+    private static void flushLiteral(List<Token> tokens, StringBuilder literal) {
+        if (literal.length() > 0) {
+            tokens.add(new Token(TokenType.LITERAL, literal.toString()));
+            literal.setLength(0);
+        }
+    }
+
+    /**
+     * 占位符内容中不能有颜色代码或玩家名，否则按普通文本处理以保持颜色转换结果不变
+     * @return 结束的%的位置，不是占位符时返回-1
+     */
+    private static int placeholderEnd(String text, int start) {
+        for (int i = start + 1; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '%') {
+                return i > start + 1 ? i : -1;
+            }
+            if (c == '&' || c == NAME || Character.isWhitespace(c)) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static String finishConstant(StringBuilder constant, Mode mode) {
+        String text = constant.toString();
+        if (mode != Mode.QUIT) {
+            return text;
+        }
+
+        // 与退出消息原有的颜色移除步骤相同
+        return ColorTranslator.strip(text);
+    }
+
+    /**
+     * Render the template for a player
+     * 为玩家渲染模板
+     * @param playerName the player's name | 玩家名
+     * @return the rendered message, before PlaceholderAPI | 渲染后的消息，尚未替换PlaceholderAPI占位符
+     * @throws IllegalStateException if the template is not compiled | 模板未能编译时抛出
+     */
+    public String render(String playerName) {
+        if (parts == null) {
+            throw new IllegalStateException("Template was not compiled: " + source);
+        }
+        if (parts.length == 1) {
+            return parts[0];
+        }
+
+        StringBuilder builder = new StringBuilder(constantLength + (parts.length - 1) * playerName.length());
+        builder.append(parts[0]);
+        for (int i = 1; i < parts.length; i++) {
+            builder.append(playerName).append(parts[i]);
+        }
+        return builder.toString();
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Whether the template could be compiled; otherwise it must be rendered through the original pipeline
+     * 是否已编译；未编译的模板需要按原有流程渲染
+     */
+    public boolean isCompiled() {
+        return parts != null;
+    }
+
+    /**
+     * Whether the rendered text may contain placeholders for PlaceholderAPI
+     * 渲染结果中是否可能包含需要PlaceholderAPI替换的占位符
+     */
+    public boolean hasPlaceholders() {
+        return placeholders;
+    }
+}
@@ -0,0 +1,213 @@
+package mc506lw.cjm.utils;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.permissions.Permissible;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Permission groups compiled from config.yml
+ * 预编译的权限组索引
+ * 加载配置时把permission-groups和predefined-permissions按优先级从高到低排序，并预先生成权限节点，
+ * 解析玩家的权限组时按顺序检查，第一个匹配的组就是优先级最高的组
+ */
+public final class PermissionGroupIndex {
+    private final PermissionGroup[] joinOrder;
+    private final PermissionGroup[] quitOrder;
+    // permission-groups中配置的组，按名称查找消息模板
+    private final Map<String, PermissionGroup> customGroups;
+    // predefined-permissions中配置的权限节点及其优先级
+    private final Map<String, Integer> predefinedPriorities;
+
+    public PermissionGroupIndex(FileConfiguration config) {
+        List<PermissionGroup> groups = new ArrayList<>();
+        Map<String, PermissionGroup> byName = new HashMap<>();
+        Map<String, Integer> priorities = new HashMap<>();
+
+        ConfigurationSection groupsSection = config.getConfigurationSection("permission-groups");
+        if (groupsSection != null) {
+            for (String groupName : groupsSection.getKeys(false)) {
+                PermissionGroup group = new PermissionGroup(groupName, groupsSection.getInt(groupName + ".priority", 0),
+                        new String[]{
+                                // 新格式权限：customjoinmessage.join.vip
+                                "customjoinmessage.join." + groupName,
+                                // 旧格式权限：customjoinmessage.use.vip
+                                "customjoinmessage.use." + groupName,
+                                // 通用权限：customjoinmessage.vip
+                                "customjoinmessage." + groupName
+                        },
+                        new String[]{
+                                "customjoinmessage.quit." + groupName,
+                                "customjoinmessage.use." + groupName,
+                                "customjoinmessage." + groupName
+                        },
+                        groupsSection.getString(groupName + ".join-message"),
+                        groupsSection.getString(groupName + ".join-prefix"),
+                        groupsSection.getString(groupName + ".join-suffix"),
+                        groupsSection.getString(groupName + ".quit-message"),
+                        groupsSection.getString(groupName + ".quit-prefix"),
+                        groupsSection.getString(groupName + ".quit-suffix"));
+                groups.add(group);
+                byName.put(groupName, group);
+            }
+        }
+
+        ConfigurationSection predefinedSection = config.getConfigurationSection("predefined-permissions");
+        if (predefinedSection != null) {
+            for (String key : predefinedSection.getKeys(false)) {
+                String permission = predefinedSection.getString(key + ".permission");
+                if (permission == null) {
+                    continue;
+                }
+
+                int priority = predefinedSection.getInt(key + ".priority", 0);
+                priorities.putIfAbsent(permission, priority);
+
+                // 预设权限组的消息模板同样来自permission-groups中的同名组（如果有）
+                PermissionGroup templates = byName.get(key);
+                String[] nodes = {permission};
+                groups.add(new PermissionGroup(key, priority, nodes, nodes,
+                        templates != null ? templates.joinMessage : null,
+                        templates != null ? templates.joinPrefix : null,
+                        templates != null ? templates.joinSuffix : null,
+                        templates != null ? templates.quitMessage : null,
+                        templates != null ? templates.quitPrefix : null,
+                        templates != null ? templates.quitSuffix : null));
+            }
+        }
+
+        // 只有优先级大于-1的组才可能被选中；稳定排序保证同优先级时先配置的组（自定义组优先于预设组）胜出
+        groups.removeIf(group -> group.priority < 0);
+        groups.sort((a, b) -> Integer.compare(b.priority, a.priority));
+
+        this.joinOrder = groups.toArray(new PermissionGroup[0]);
+        this.quitOrder = joinOrder;
+        this.customGroups = Collections.unmodifiableMap(byName);
+        this.predefinedPriorities = Collections.unmodifiableMap(priorities);
+    }
+
+    /**
+     * Find the highest priority group the player has permission for
+     * 查找玩家拥有权限的最高优先级权限组
+     * @param player player to check | 要检查的玩家
+     * @param quit true for quit message permissions, false for join | true检查退出消息权限，false检查加入消息权限
+     * @return the group, or null if the player has none | 权限组，没有则返回null
+     */
+    public PermissionGroup resolve(Permissible player, boolean quit) {
+        for (PermissionGroup group : quit ? quitOrder : joinOrder) {
+            String[] nodes = quit ? group.quitNodes : group.joinNodes;
+            for (String node : nodes) {
+                if (player.hasPermission(node)) {
+                    return group;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get a group configured under permission-groups by name
+     * 按名称获取permission-groups中配置的组
+     * @return the group, or null if not configured | 权限组，未配置则返回null
+     */
+    public PermissionGroup getCustomGroup(String groupName) {
+        return groupName != null ? customGroups.get(groupName) : null;
+    }
+
+    /**
+     * Get the priority configured for a predefined permission node
+     * 获取预设权限节点的优先级
+     * @return the priority, or 0 if not configured | 优先级，未配置则返回0
+     */
+    public int getPredefinedPriority(String permission) {
+        Integer priority = predefinedPriorities.get(permission);
+        return priority != null ? priority : 0;
+    }
+
+    /**
+     * A compiled permission group with its message templates
+     * 预编译的权限组及其消息模板
+     */
+    public static final class PermissionGroup {
+        private final String name;
+        private final int priority;
+        private final String[] joinNodes;
+        private final String[] quitNodes;
+        private final String joinMessage;
+        private final String joinPrefix;
+        private final String joinSuffix;
+        private final String quitMessage;
+        private final String quitPrefix;
+        private final String quitSuffix;
+        private final MessageTemplate joinMessageTemplate;
+        private final MessageTemplate joinPrefixTemplate;
+        private final MessageTemplate joinSuffixTemplate;
+
+        private PermissionGroup(String name, int priority, String[] joinNodes, String[] quitNodes,
+                                String joinMessage, String joinPrefix, String joinSuffix,
+                                String quitMessage, String quitPrefix, String quitSuffix) {
+            this.name = name;
+            this.priority = priority;
+            this.joinNodes = joinNodes;
+            this.quitNodes = quitNodes;
+            this.joinMessage = joinMessage;
+            this.joinPrefix = joinPrefix;
+            this.joinSuffix = joinSuffix;
+            this.quitMessage = quitMessage;
+            this.quitPrefix = quitPrefix;
+            this.quitSuffix = quitSuffix;
+            this.joinMessageTemplate = MessageTemplate.compile(joinMessage, MessageTemplate.Mode.FORMAT);
+            this.joinPrefixTemplate = MessageTemplate.compile(joinPrefix, MessageTemplate.Mode.FORMAT);
+            this.joinSuffixTemplate = MessageTemplate.compile(joinSuffix, MessageTemplate.Mode.FORMAT);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        public String getJoinMessage() {
+            return joinMessage;
+        }
+
+        public String getJoinPrefix() {
+            return joinPrefix;
+        }
+
+        public String getJoinSuffix() {
+            return joinSuffix;
+        }
+
+        public String getQuitMessage() {
+            return quitMessage;
+        }
+
+        public String getQuitPrefix() {
+            return quitPrefix;
+        }
+
+        public String getQuitSuffix() {
+            return quitSuffix;
+        }
+
+        public MessageTemplate getJoinMessageTemplate() {
+            return joinMessageTemplate;
+        }
+
+        public MessageTemplate getJoinPrefixTemplate() {
+            return joinPrefixTemplate;
+        }
+
+        public MessageTemplate getJoinSuffixTemplate() {
+            return joinSuffixTemplate;
+        }
+    }
+}
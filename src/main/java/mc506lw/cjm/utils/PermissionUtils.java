@@ -1,18 +1,23 @@
 package mc506lw.cjm.utils;
 
 import mc506lw.cjm.CustomJoinMessage;
+import mc506lw.cjm.utils.PermissionGroupIndex.PermissionGroup;
 import org.bukkit.command.CommandSender;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 权限工具类，用于检查玩家是否有特定权限
  */
 public class PermissionUtils {
     private final CustomJoinMessage plugin;
+    // 在线玩家已解析的权限组，登录时填充，退出、重载配置或超过permission-group-cache-ttl后重新解析
+    private final Map<UUID, ResolvedGroups> resolvedGroups = new ConcurrentHashMap<>();
     
     /**
      * 构造函数
@@ -28,21 +33,15 @@ public class PermissionUtils {
      * @return 优先级，如果未找到则返回0
      */
     public int getPredefinedPermissionPriority(String permissionName) {
-        ConfigurationSection predefinedSection = plugin.getConfigManager().getConfig()
-                .getConfigurationSection("predefined-permissions");
-        
-        if (predefinedSection == null) {
-            return 0;
-        }
-        
-        for (String key : predefinedSection.getKeys(false)) {
-            String permission = predefinedSection.getString(key + ".permission");
-            if (permission != null && permission.equals(permissionName)) {
-                return predefinedSection.getInt(key + ".priority", 0);
-            }
-        }
-        
-        return 0;
+        return getPermissionGroups().getPredefinedPriority(permissionName);
+    }
+    
+    /**
+     * 获取当前配置的权限组索引
+     * @return 权限组索引
+     */
+    private PermissionGroupIndex getPermissionGroups() {
+        return plugin.getConfigManager().getSnapshot().getPermissionGroups();
     }
     
     /**
@@ -142,55 +141,72 @@ public class PermissionUtils {
      * @return 权限组名称，如果没有权限组则返回null
      */
     public String getHighestPriorityPermissionGroup(Player player, String messageType) {
-        ConfigurationSection groupsSection = plugin.getConfigManager().getConfig()
-                .getConfigurationSection("permission-groups");
-        
-        String highestGroup = null;
-        int highestPriority = -1;
-        
-        // 检查所有自定义权限组
-        if (groupsSection != null) {
-            for (String groupName : groupsSection.getKeys(false)) {
-                // 检查新格式权限：customjoinmessage.join.vip 或 customjoinmessage.quit.vip
-                String permission = "customjoinmessage." + messageType + "." + groupName;
-                
-                // 检查旧格式权限：customjoinmessage.use.vip
-                String oldPermission = "customjoinmessage.use." + groupName;
-                
-                // 检查通用权限：customjoinmessage.vip
-                String generalPermission = "customjoinmessage." + groupName;
-                
-                if (player.hasPermission(permission) || player.hasPermission(oldPermission) || player.hasPermission(generalPermission)) {
-                    int priority = groupsSection.getInt(groupName + ".priority", 0);
-                    
-                    if (priority > highestPriority) {
-                        highestPriority = priority;
-                        highestGroup = groupName;
-                    }
-                }
-            }
+        // 只有加入消息在渲染时使用权限组，退出权限组不缓存，每次直接解析
+        PermissionGroup group = "quit".equals(messageType)
+                ? getPermissionGroups().resolve(player, true) : getResolvedGroups(player).join;
+        return group != null ? group.getName() : null;
+    }
+    
+    /**
+     * 获取玩家的最高优先级加入消息权限组，包括已编译的消息模板
+     * @param player 玩家
+     * @return 权限组，如果没有权限组则返回null
+     */
+    public PermissionGroup getJoinPermissionGroup(Player player) {
+        return getResolvedGroups(player).join;
+    }
+    
+    /**
+     * 解析并缓存玩家的加入权限组，应在玩家登录时于主线程调用
+     * @param player 玩家
+     */
+    public void cachePermissionGroups(Player player) {
+        getResolvedGroups(player);
+    }
+    
+    /**
+     * 清除玩家已缓存的权限组，下次使用时重新解析
+     * 玩家退出时调用；权限变化不需要调用，缓存超过permission-group-cache-ttl后会自动重新解析
+     * @param uuid 玩家UUID
+     */
+    public void invalidatePermissionGroups(UUID uuid) {
+        resolvedGroups.remove(uuid);
+    }
+    
+    /**
+     * 清除所有玩家已缓存的权限组，用于重载配置或权限插件整体重载后
+     */
+    public void invalidatePermissionGroups() {
+        resolvedGroups.clear();
+    }
+    
+    /**
+     * 获取玩家已解析的权限组，缓存不存在、已过期或属于旧配置时重新解析
+     * @param player 玩家
+     * @return 已解析的权限组
+     */
+    private ResolvedGroups getResolvedGroups(Player player) {
+        ConfigSnapshot config = plugin.getConfigManager().getSnapshot();
+        PermissionGroupIndex index = config.getPermissionGroups();
+        UUID uuid = player.getUniqueId();
+        long now = System.nanoTime();
+        ResolvedGroups groups = resolvedGroups.get(uuid);
+        if (groups != null && groups.index == index
+                && now - groups.resolvedAt < TimeUnit.SECONDS.toNanos(config.getPermissionGroupCacheTtl())) {
+            return groups;
         }
         
-        // 检查预设权限组
-        ConfigurationSection predefinedSection = plugin.getConfigManager().getConfig()
-                .getConfigurationSection("predefined-permissions");
+        // 权限组在加载配置时已按优先级从高到低排序，第一个匹配的组即为结果
+        groups = new ResolvedGroups(index, index.resolve(player, false), now);
         
-        if (predefinedSection != null) {
-            for (String key : predefinedSection.getKeys(false)) {
-                String permission = predefinedSection.getString(key + ".permission");
-                
-                if (permission != null && player.hasPermission(permission)) {
-                    int priority = predefinedSection.getInt(key + ".priority", 0);
-                    
-                    if (priority > highestPriority) {
-                        highestPriority = priority;
-                        highestGroup = key;
-                    }
-                }
+        // 只缓存在线玩家，避免退出后才完成的异步调用重新写入缓存
+        if (player.isOnline()) {
+            resolvedGroups.put(uuid, groups);
+            if (!player.isOnline()) {
+                resolvedGroups.remove(uuid, groups);
             }
         }
-        
-        return highestGroup;
+        return groups;
     }
     
     /**
@@ -227,8 +243,8 @@ public class PermissionUtils {
      * @return 加入消息，如果组不存在则返回null
      */
     public String getGroupJoinMessage(String groupName) {
-        return plugin.getConfigManager().getConfig()
-                .getString("permission-groups." + groupName + ".join-message");
+        PermissionGroup group = getPermissionGroups().getCustomGroup(groupName);
+        return group != null ? group.getJoinMessage() : null;
     }
     
     /**
@@ -237,8 +253,8 @@ public class PermissionUtils {
      * @return 加入前缀，如果组不存在则返回null
      */
     public String getGroupJoinPrefix(String groupName) {
-        return plugin.getConfigManager().getConfig()
-                .getString("permission-groups." + groupName + ".join-prefix");
+        PermissionGroup group = getPermissionGroups().getCustomGroup(groupName);
+        return group != null ? group.getJoinPrefix() : null;
     }
     
     /**
@@ -247,8 +263,8 @@ public class PermissionUtils {
      * @return 加入后缀，如果组不存在则返回null
      */
     public String getGroupJoinSuffix(String groupName) {
-        return plugin.getConfigManager().getConfig()
-                .getString("permission-groups." + groupName + ".join-suffix");
+        PermissionGroup group = getPermissionGroups().getCustomGroup(groupName);
+        return group != null ? group.getJoinSuffix() : null;
     }
     
     /**
@@ -257,8 +273,8 @@ public class PermissionUtils {
      * @return 退出消息，如果组不存在则返回null
      */
     public String getGroupQuitMessage(String groupName) {
-        return plugin.getConfigManager().getConfig()
-                .getString("permission-groups." + groupName + ".quit-message");
+        PermissionGroup group = getPermissionGroups().getCustomGroup(groupName);
+        return group != null ? group.getQuitMessage() : null;
     }
     
     /**
@@ -267,8 +283,8 @@ public class PermissionUtils {
      * @return 退出前缀，如果组不存在则返回null
      */
     public String getGroupQuitPrefix(String groupName) {
-        return plugin.getConfigManager().getConfig()
-                .getString("permission-groups." + groupName + ".quit-prefix");
+        PermissionGroup group = getPermissionGroups().getCustomGroup(groupName);
+        return group != null ? group.getQuitPrefix() : null;
     }
     
     /**
@@ -277,8 +293,8 @@ public class PermissionUtils {
      * @return 退出后缀，如果组不存在则返回null
      */
     public String getGroupQuitSuffix(String groupName) {
-        return plugin.getConfigManager().getConfig()
-                .getString("permission-groups." + groupName + ".quit-suffix");
+        PermissionGroup group = getPermissionGroups().getCustomGroup(groupName);
+        return group != null ? group.getQuitSuffix() : null;
     }
     
     /**
@@ -346,13 +362,8 @@ public class PermissionUtils {
     private String processColorCodes(String message) {
         if (message == null) return "";
         
-        // Support for RGB colors (1.16+) - &#RRGGBB format
-        message = message.replaceAll("&#([0-9a-fA-F])([0-9a-fA-F])([0-9a-fA-F])([0-9a-fA-F])([0-9a-fA-F])([0-9a-fA-F])", "§x§$1§$2§$3§$4§$5§$6");
-        
-        // Translate standard color codes (&a, &b, etc.) and &x&r&r&g&g&b&b RGB format
-        message = org.bukkit.ChatColor.translateAlternateColorCodes('&', message);
-        
-        return message;
+        // 一次扫描转换&#RRGGBB、&#RGB和标准颜色代码
+        return ColorTranslator.translate(message);
     }
     
     /**
@@ -361,18 +372,8 @@ public class PermissionUtils {
      * @return 移除颜色代码后的消息
      */
     public String removeColorCodes(String message) {
-        if (message == null) return null;
-        
-        // 移除传统颜色代码 (&a, &b等)
-        String result = message.replaceAll("&[0-9a-fA-Fk-rK-R]", "");
-        
-        // 移除hex颜色代码 (&#RRGGBB)
-        result = result.replaceAll("&#[0-9a-fA-F]{6}", "");
-        
-        // 移除ChatColor颜色代码 (§a, §b等)
-        result = result.replaceAll("§[0-9a-fA-Fk-rK-R]", "");
-        
-        return result;
+        // 一次扫描移除标准、hex和ChatColor颜色代码
+        return ColorTranslator.strip(message);
     }
     
     /**
@@ -382,8 +383,8 @@ public class PermissionUtils {
      */
     public String getPermissionLevel(CommandSender sender) {
         if (sender instanceof Player) {
-            Player player = (Player) sender;
-            String customGroup = getHighestPriorityPermissionGroup(player);
+            // 与加入消息使用同一份缓存，权限变化最多在permission-group-cache-ttl后显示
+            String customGroup = getHighestPriorityPermissionGroup((Player) sender);
             
             if (customGroup != null) {
                 // 返回最高优先级权限组名称
@@ -508,4 +509,20 @@ public class PermissionUtils {
         // 如果无法检查权限，返回false
         return false;
     }
+    
+    /**
+     * 玩家已解析的加入权限组，以及解析时使用的权限组索引和解析时间
+     */
+    private static final class ResolvedGroups {
+        private final PermissionGroupIndex index;
+        private final PermissionGroup join;
+        // System.nanoTime()
+        private final long resolvedAt;
+        
+        private ResolvedGroups(PermissionGroupIndex index, PermissionGroup join, long resolvedAt) {
+            this.index = index;
+            this.join = join;
+            this.resolvedAt = resolvedAt;
+        }
+    }
 }
\ No newline at end of file
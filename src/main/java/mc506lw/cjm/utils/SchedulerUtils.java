@@ -1,79 +1,253 @@
 package mc506lw.cjm.utils;
 
 import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
 import org.bukkit.plugin.Plugin;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 /**
  * 工具类，用于适配Spigot和Folia的调度系统
+ * Folia的调度器和方法在构造时通过反射查找一次并转换为MethodHandle，之后每次调度直接调用
  */
 public class SchedulerUtils {
+    private static final String FOLIA_SCHEDULER_PACKAGE = "io.papermc.paper.threadedregions.scheduler.";
+    // 类加载时检测一次，由类初始化保证线程安全
+    private static final boolean FOLIA = detectFolia();
+
     private final Plugin plugin;
-    private static boolean isFolia = false;
-    private static boolean checked = false;
+    // 已绑定到调度器实例的方法，类型为(Plugin, Consumer)Object；不是Folia或查找失败时为null
+    private final MethodHandle globalRun;
+    // 类型为(Plugin, Consumer, long, long)Object
+    private final MethodHandle globalRunAtFixedRate;
+    private final MethodHandle asyncRunNow;
+    // 类型为(Plugin, Consumer, long, long, TimeUnit)Object
+    private final MethodHandle asyncRunAtFixedRate;
+    // 未绑定的Entity.getScheduler()，类型为(Entity)Object
+    private final MethodHandle entityGetScheduler;
+    // 未绑定的EntityScheduler.run，类型为(Object, Plugin, Consumer, Runnable)Object
+    private final MethodHandle entityRun;
 
     public SchedulerUtils(Plugin plugin) {
         this.plugin = plugin;
+
+        if (FOLIA) {
+            this.globalRun = resolve("getGlobalRegionScheduler", "GlobalRegionScheduler", "run",
+                    Plugin.class, Consumer.class);
+            this.globalRunAtFixedRate = resolve("getGlobalRegionScheduler", "GlobalRegionScheduler", "runAtFixedRate",
+                    Plugin.class, Consumer.class, long.class, long.class);
+            this.asyncRunNow = resolve("getAsyncScheduler", "AsyncScheduler", "runNow",
+                    Plugin.class, Consumer.class);
+            this.asyncRunAtFixedRate = resolve("getAsyncScheduler", "AsyncScheduler", "runAtFixedRate",
+                    Plugin.class, Consumer.class, long.class, long.class, TimeUnit.class);
+            this.entityGetScheduler = resolveEntityGetScheduler();
+            this.entityRun = entityGetScheduler != null ? resolveEntityRun() : null;
+        } else {
+            this.globalRun = null;
+            this.globalRunAtFixedRate = null;
+            this.asyncRunNow = null;
+            this.asyncRunAtFixedRate = null;
+            this.entityGetScheduler = null;
+            this.entityRun = null;
+        }
     }
 
     /**
      * 检查服务器是否为Folia
      */
-    private static boolean isFolia() {
-        if (!checked) {
-            try {
-                Class.forName("io.papermc.paper.threadedregions.RegionizedServerInitEvent");
-                isFolia = true;
-            } catch (ClassNotFoundException e) {
-                isFolia = false;
-            }
-            checked = true;
+    private static boolean detectFolia() {
+        try {
+            Class.forName("io.papermc.paper.threadedregions.RegionizedServerInitEvent");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 检查服务器是否为Folia
+     */
+    public static boolean isFolia() {
+        return FOLIA;
+    }
+
+    /**
+     * 查找Folia调度器的方法并绑定到调度器实例
+     * @param getter Bukkit上获取调度器的静态方法名
+     * @param schedulerType 调度器接口名
+     * @param methodName 调度方法名
+     * @param parameterTypes 调度方法的参数类型
+     * @return 绑定后的方法，查找失败时返回null
+     */
+    private MethodHandle resolve(String getter, String schedulerType, String methodName, Class<?>... parameterTypes) {
+        try {
+            Object scheduler = Bukkit.class.getMethod(getter).invoke(null);
+            // 通过公开的接口查找方法，实现类可能无法访问
+            Method method = Class.forName(FOLIA_SCHEDULER_PACKAGE + schedulerType).getMethod(methodName, parameterTypes);
+            return MethodHandles.publicLookup().unreflect(method)
+                    .bindTo(scheduler)
+                    .asType(MethodType.methodType(Object.class, parameterTypes));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            plugin.getLogger().warning("Failed to resolve Folia scheduler method " + schedulerType + "." + methodName
+                    + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 查找Entity.getScheduler()，每个实体的调度器不同，因此不绑定实例
+     * @return 查找到的方法，查找失败时返回null
+     */
+    private MethodHandle resolveEntityGetScheduler() {
+        try {
+            return MethodHandles.publicLookup().unreflect(Entity.class.getMethod("getScheduler"))
+                    .asType(MethodType.methodType(Object.class, Entity.class));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            plugin.getLogger().warning("Failed to resolve Folia scheduler method Entity.getScheduler: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 查找EntityScheduler.run(Plugin, Consumer, Runnable)，调用时再传入实体的调度器
+     * @return 查找到的方法，查找失败时返回null
+     */
+    private MethodHandle resolveEntityRun() {
+        try {
+            Class<?> schedulerType = Class.forName(FOLIA_SCHEDULER_PACKAGE + "EntityScheduler");
+            Method method = schedulerType.getMethod("run", Plugin.class, Consumer.class, Runnable.class);
+            return MethodHandles.publicLookup().unreflect(method)
+                    .asType(MethodType.methodType(Object.class, Object.class, Plugin.class, Consumer.class, Runnable.class));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            plugin.getLogger().warning("Failed to resolve Folia scheduler method EntityScheduler.run: " + e.getMessage());
+            return null;
         }
-        return isFolia;
     }
 
     /**
      * 运行任务（全局）
      */
     public void runTask(Runnable task) {
-        if (isFolia()) {
+        if (globalRun != null) {
             try {
-                // 使用反射调用Folia的GlobalRegionScheduler
-                Method getGlobalRegionScheduler = Bukkit.class.getMethod("getGlobalRegionScheduler");
-                Object globalRegionScheduler = getGlobalRegionScheduler.invoke(null);
-                
-                Method run = globalRegionScheduler.getClass().getMethod("run", Plugin.class, Consumer.class);
-                run.invoke(globalRegionScheduler, plugin, (Consumer<Object>) scheduledTask -> task.run());
-            } catch (Exception e) {
-                // 如果反射调用失败，回退到同步执行
-                Bukkit.getScheduler().runTask(plugin, task);
+                // 调用Folia的GlobalRegionScheduler
+                Object scheduledTask = (Object) globalRun.invokeExact(plugin, (Consumer<Object>) t -> task.run());
+                return;
+            } catch (Throwable e) {
+                // 如果调用失败，回退到同步执行
             }
-        } else {
-            Bukkit.getScheduler().runTask(plugin, task);
         }
+        Bukkit.getScheduler().runTask(plugin, task);
+    }
+
+    /**
+     * 定时运行任务（全局）
+     * @param delayTicks 首次执行前的延迟（tick）
+     * @param periodTicks 执行间隔（tick）
+     */
+    public void runTaskTimer(Runnable task, long delayTicks, long periodTicks) {
+        if (globalRunAtFixedRate != null) {
+            try {
+                // Folia的GlobalRegionScheduler要求延迟和间隔至少为1 tick
+                Object scheduledTask = (Object) globalRunAtFixedRate.invokeExact(plugin, (Consumer<Object>) t -> task.run(),
+                        Math.max(1, delayTicks), Math.max(1, periodTicks));
+                return;
+            } catch (Throwable e) {
+                // 如果调用失败，回退到同步执行
+            }
+        }
+        Bukkit.getScheduler().runTaskTimer(plugin, task, delayTicks, periodTicks);
     }
 
     /**
      * 异步运行任务
      */
     public void runTaskAsynchronously(Runnable task) {
-        if (isFolia()) {
+        if (asyncRunNow != null) {
             try {
-                // 使用反射调用Folia的AsyncScheduler
-                Method getAsyncScheduler = Bukkit.class.getMethod("getAsyncScheduler");
-                Object asyncScheduler = getAsyncScheduler.invoke(null);
-                
-                Method runNow = asyncScheduler.getClass().getMethod("runNow", Plugin.class, Consumer.class);
-                runNow.invoke(asyncScheduler, plugin, (Consumer<Object>) scheduledTask -> task.run());
-            } catch (Exception e) {
-                // 如果反射调用失败，回退到Spigot的异步调度
-                Bukkit.getScheduler().runTaskAsynchronously(plugin, task);
+                // 调用Folia的AsyncScheduler
+                Object scheduledTask = (Object) asyncRunNow.invokeExact(plugin, (Consumer<Object>) t -> task.run());
+                return;
+            } catch (Throwable e) {
+                // 如果调用失败，回退到Spigot的异步调度
             }
-        } else {
-            Bukkit.getScheduler().runTaskAsynchronously(plugin, task);
         }
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, task);
+    }
+
+    /**
+     * 异步定时运行任务
+     * @param delayTicks 首次执行前的延迟（tick）
+     * @param periodTicks 执行间隔（tick）
+     */
+    public void runTaskTimerAsynchronously(Runnable task, long delayTicks, long periodTicks) {
+        if (asyncRunAtFixedRate != null) {
+            try {
+                // Folia的异步调度使用实际时间而不是tick
+                Object scheduledTask = (Object) asyncRunAtFixedRate.invokeExact(plugin, (Consumer<Object>) t -> task.run(),
+                        Math.max(1, delayTicks) * 50, Math.max(1, periodTicks) * 50, TimeUnit.MILLISECONDS);
+                return;
+            } catch (Throwable e) {
+                // 如果调用失败，回退到Spigot的异步调度
+            }
+        }
+        Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, task, delayTicks, periodTicks);
+    }
+
+    /**
+     * 在实体所在的区域运行任务，不是Folia时在主线程运行
+     * @param entity 任务所属的实体
+     * @param task 要运行的任务
+     * @return 任务是否已安排；实体已被移除时Folia不会运行任务，返回false
+     */
+    public boolean runTaskForEntity(Entity entity, Runnable task) {
+        if (entityRun != null) {
+            try {
+                // 调用实体自己的EntityScheduler，任务随实体所在区域的tick执行
+                Object entityScheduler = (Object) entityGetScheduler.invokeExact(entity);
+                Object scheduledTask = (Object) entityRun.invokeExact(entityScheduler, plugin,
+                        (Consumer<Object>) t -> task.run(), (Runnable) null);
+                return scheduledTask != null;
+            } catch (Throwable e) {
+                // 如果调用失败，回退到全局调度
+            }
+        }
+        runTask(task);
+        return true;
+    }
+
+    /**
+     * 向所有玩家和控制台广播消息
+     * Folia上启用按区域发送时，每个玩家的消息在各自的实体调度器上发送，不再全部交给全局区域；
+     * 否则与Bukkit.broadcastMessage相同，在主线程调用时立即广播，在其他线程调用时交给全局调度
+     * @param message 要广播的消息
+     * @param regionDelivery 在Folia上是否按玩家所在区域发送
+     */
+    public void broadcast(String message, boolean regionDelivery) {
+        if (regionDelivery && entityRun != null) {
+            for (Player player : Bukkit.getOnlinePlayers()) {
+                // 与Bukkit.broadcastMessage相同，只发送给有接收广播权限的玩家
+                runTaskForEntity(player, () -> {
+                    if (player.hasPermission(Server.BROADCAST_CHANNEL_USERS)) {
+                        player.sendMessage(message);
+                    }
+                });
+            }
+            Bukkit.getConsoleSender().sendMessage(message);
+            return;
+        }
+
+        if (!FOLIA && Bukkit.isPrimaryThread()) {
+            Bukkit.broadcastMessage(message);
+            return;
+        }
+        runTask(() -> Bukkit.broadcastMessage(message));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,103 @@
+package mc506lw.cjm.utils;
+
+import net.jqwik.api.Arbitraries;
+import net.jqwik.api.Arbitrary;
+import net.jqwik.api.Example;
+import net.jqwik.api.ForAll;
+import net.jqwik.api.Property;
+import net.jqwik.api.Provide;
+import net.jqwik.api.constraints.IntRange;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares MessageLengthUtil with the regex implementation it replaced
+ * 把MessageLengthUtil与被替换的正则表达式实现逐一比较
+ * 两处有意的行为变化单独用示例测试说明
+ */
+class MessageLengthUtilTest {
+    // 颜色代码前缀、颜色字符、十六进制数字和不是颜色字符的字母占多数，容易生成各种代码组合
+    private static final String ALPHABET = "&&&##§§0369aAfFkKoOrRlLxXgGzZ 中";
+    private static final String LINE_BREAKS = "\n\r";
+
+    private final MessageLengthUtil util = new MessageLengthUtil();
+    private final LegacyMessageLengthUtil legacy = new LegacyMessageLengthUtil();
+
+    @Provide
+    Arbitrary<String> messages() {
+        return Arbitraries.strings().withChars(ALPHABET.toCharArray()).ofMaxLength(40);
+    }
+
+    @Provide
+    Arbitrary<String> messagesWithLineBreaks() {
+        return Arbitraries.strings().withChars((ALPHABET + LINE_BREAKS).toCharArray()).ofMaxLength(40);
+    }
+
+    /**
+     * 旧实现在&#处总会进入十六进制状态，见hexColorIsKeptWholeWhenTruncating
+     */
+    @Provide
+    Arbitrary<String> messagesWithoutHexColors() {
+        return Arbitraries.strings().withChars(ALPHABET.replace("#", "").toCharArray()).ofMaxLength(40);
+    }
+
+    @Property
+    void lengthMatchesLegacy(@ForAll("messagesWithLineBreaks") String text) {
+        assertEquals(legacy.getLengthWithoutColorCodes(text), util.getLengthWithoutColorCodes(text));
+    }
+
+    @Property
+    void exceedsLengthLimitMatchesLegacy(@ForAll("messagesWithLineBreaks") String text,
+                                         @ForAll @IntRange(min = -1, max = 45) int maxLength) {
+        assertEquals(legacy.exceedsLengthLimit(text, maxLength), util.exceedsLengthLimit(text, maxLength));
+    }
+
+    /**
+     * 旧实现遇到换行时总是返回false，见colorCodesAreDetectedAcrossLineBreaks
+     */
+    @Property
+    void containsColorCodesMatchesLegacy(@ForAll("messages") String text) {
+        assertEquals(legacy.containsColorCodes(text), util.containsColorCodes(text));
+    }
+
+    @Property
+    void truncateToLengthMatchesLegacy(@ForAll("messagesWithoutHexColors") String text,
+                                       @ForAll @IntRange(min = -1, max = 45) int maxLength) {
+        assertEquals(legacy.truncateToLength(text, maxLength), util.truncateToLength(text, maxLength));
+    }
+
+    @Property
+    void truncationIsPrefixWithLimitedLength(@ForAll("messagesWithLineBreaks") String text,
+                                             @ForAll @IntRange(min = 0, max = 45) int maxLength) {
+        String truncated = util.truncateToLength(text, maxLength);
+
+        assertTrue(text.startsWith(truncated));
+        assertEquals(Math.min(util.getLengthWithoutColorCodes(text), maxLength),
+                util.getLengthWithoutColorCodes(truncated));
+    }
+
+    /**
+     * The legacy state machine counted '#' as a hex digit and cut &#RRGGBB after three characters
+     * 旧实现把#算作十六进制数字，&#RRGGBB在第三个字符后就结束，剩下的数字被当作可见字符
+     */
+    @Example
+    void hexColorIsKeptWholeWhenTruncating() {
+        assertEquals("&#ff000", legacy.truncateToLength("&#ff0000Hello", 3));
+        assertEquals("&#ff0000Hel", util.truncateToLength("&#ff0000Hello", 3));
+        assertEquals("&#f00Hel", util.truncateToLength("&#f00Hello", 3));
+    }
+
+    /**
+     * The legacy matches() patterns used '.', which does not match line breaks
+     * 旧实现的matches()正则表达式使用的.不匹配换行，包含换行的消息总是返回false
+     */
+    @Example
+    void colorCodesAreDetectedAcrossLineBreaks() {
+        assertFalse(legacy.containsColorCodes("&aHello\nWorld"));
+        assertTrue(util.containsColorCodes("&aHello\nWorld"));
+        assertTrue(util.containsColorCodes("Hello\n§lWorld"));
+        assertFalse(util.containsColorCodes("Hello\nWorld"));
+    }
+}